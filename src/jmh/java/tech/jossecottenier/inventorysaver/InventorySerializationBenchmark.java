@@ -0,0 +1,66 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventorySerializationBenchmark {
+	private InventorySaver inventorySaver;
+	private ItemStack[] inventoryContents;
+	private String serialization;
+	private byte[] compactData;
+	
+	@Setup
+	public void setUp() {
+		MockBukkit.mock();
+		
+		inventorySaver = new InventorySaver();
+		inventoryContents = Randomizer.createRandomInventoryContents();
+		serialization = inventorySaver.serializeInventory(inventoryContents);
+		compactData = inventorySaver.serializeInventoryCompact(inventoryContents);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		MockBukkit.unmock();
+	}
+	
+	@Benchmark
+	public String serializeInventory() {
+		return inventorySaver.serializeInventory(inventoryContents);
+	}
+	
+	@Benchmark
+	public ItemStack[] deserializeInventory() {
+		return inventorySaver.deserializeInventory(serialization);
+	}
+	
+	@Benchmark
+	public byte[] serializeInventoryCompact() {
+		return inventorySaver.serializeInventoryCompact(inventoryContents);
+	}
+	
+	@Benchmark
+	public ItemStack[] deserializeInventoryCompact() {
+		return inventorySaver.deserializeInventory(compactData);
+	}
+}
@@ -0,0 +1,121 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveLoadBenchmark {
+	// Amount of players which are actually saved and loaded, the others only fill the world
+	private static final int SAMPLED_PLAYERS = 1000;
+	
+	// The players past the sampled ones are never loaded, so the largest case measures looking up player files in a large directory
+	@Param({ "10", "1000", "100000" })
+	private int playerEntries;
+	
+	private Main plugin;
+	private InventorySaver inventorySaver;
+	private WorldMock world;
+	private PlayerMock[] players;
+	private int nextPlayer;
+	
+	@Setup
+	public void setUp() throws IOException {
+		final ServerMock server = MockBukkit.mock();
+		plugin = (Main)MockBukkit.load(Main.class);
+		
+		inventorySaver = new InventorySaver();
+		world = new WorldMock(Material.OAK_PLANKS, 5);
+		players = new PlayerMock[Math.min(playerEntries, SAMPLED_PLAYERS)];
+		
+		final File folder = new File(plugin.getDataFolder() + File.separator + world.getName());
+		folder.mkdirs();
+		
+		// Every entry holds the same inventory, so the file only has to be serialized once
+		final ItemStack[] inventoryContents = Randomizer.createRandomInventoryContents();
+		final FileConfiguration configuration = new YamlConfiguration();
+		configuration.set("name", "tester");
+		configuration.set("inventory", inventorySaver.serializeInventory(inventoryContents));
+		final byte[] file = configuration.saveToString().getBytes(StandardCharsets.UTF_8);
+		
+		for (int i = 0; i < playerEntries; i++) {
+			final UUID uuid;
+			
+			if (i < players.length) {
+				players[i] = new PlayerMock(server, "tester-" + i);
+				players[i].getInventory().setContents(inventoryContents);
+				uuid = players[i].getUniqueId();
+			} else {
+				uuid = UUID.randomUUID();
+			}
+			
+			Files.write(WorldInventoryCache.getPlayerFile(folder, uuid).toPath(), file);
+		}
+	}
+	
+	/*
+	 * Evicts all cached inventories before every
+	 * iteration so each of them starts out reading
+	 * from the storage, which is left open.
+	 */
+	@Setup(Level.Iteration)
+	public void dropCache() {
+		WorldInventoryCache.getInstance().flush(Collections.emptyMap()).join();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		WorldInventoryCache.shutdownInstance();
+		InventoryWriter.shutdownInstance();
+		MockBukkit.unmock();
+	}
+	
+	private PlayerMock nextPlayer() {
+		nextPlayer = (nextPlayer + 1) % players.length;
+		
+		return players[nextPlayer];
+	}
+	
+	@Benchmark
+	public void saveInventory() {
+		inventorySaver.saveInventory(nextPlayer(), world, plugin);
+		WorldInventoryCache.getInstance().flush().join();
+	}
+	
+	@Benchmark
+	public ItemStack[] loadInventoryContents() {
+		return inventorySaver.loadInventoryContents(nextPlayer(), world, plugin);
+	}
+}
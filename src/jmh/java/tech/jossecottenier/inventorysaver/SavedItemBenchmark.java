@@ -0,0 +1,52 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SavedItemBenchmark {
+	private ItemStack item;
+	private String serialization;
+	
+	@Setup
+	public void setUp() {
+		MockBukkit.mock();
+		
+		item = Randomizer.createRandomModifiedTool();
+		serialization = new SavedItem(item).serialize();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		MockBukkit.unmock();
+	}
+	
+	@Benchmark
+	public String serialize() {
+		return new SavedItem(item).serialize();
+	}
+	
+	@Benchmark
+	public ItemStack deserialize() {
+		return SavedItem.deserialize(serialization);
+	}
+}
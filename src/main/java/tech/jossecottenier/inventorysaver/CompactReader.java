@@ -0,0 +1,193 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+
+public class CompactReader {
+	private final byte[] data;
+	private int position;
+	
+	private final Material[] materials;
+	private final Enchantment[] enchantments;
+	// Items which have been read as a whole, by their ID
+	private final List<ItemStack> items;
+	
+	/**
+	 * Reads the format version and the material and
+	 * enchantment tables of data written by a CompactWriter.
+	 * 
+	 * @param data The encoded bytes
+	 * @throws IllegalArgumentException If the data is of an unsupported version
+	 */
+	public CompactReader(byte[] data) {
+		this.data = data;
+		this.items = new ArrayList<>();
+		
+		final int version = readByte();
+		if (version != CompactWriter.VERSION) {
+			throw new IllegalArgumentException(String.format("Unsupported compact format version %d", version));
+		}
+		
+		this.materials = new Material[readVarInt()];
+		for (int i = 0; i < materials.length; i++) {
+			// Null if the material doesn't exist (anymore) on this server version
+			materials[i] = Material.getMaterial(readString());
+		}
+		
+		this.enchantments = new Enchantment[readVarInt()];
+		for (int i = 0; i < enchantments.length; i++) {
+			enchantments[i] = Enchantment.getByKey(NamespacedKey.minecraft(readString()));
+		}
+	}
+	
+	private void require(int byteCount) {
+		if (position + byteCount > data.length) {
+			throw new IllegalArgumentException("Compact data ended unexpectedly");
+		}
+	}
+	
+	/**
+	 * Reads a single byte.
+	 * 
+	 * @return The unsigned byte
+	 */
+	public int readByte() {
+		require(1);
+		return data[position++] & 0xFF;
+	}
+	
+	/**
+	 * Reads an integer written by CompactWriter.writeVarInt.
+	 * 
+	 * @return The integer
+	 */
+	public int readVarInt() {
+		int value = 0;
+		
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int currentByte = readByte();
+			value |= (currentByte & 0x7F) << shift;
+			
+			if ((currentByte & 0x80) == 0) {
+				return value;
+			}
+		}
+		
+		throw new IllegalArgumentException("Compact data contains a malformed number");
+	}
+	
+	/**
+	 * Reads a float written by CompactWriter.writeFloat.
+	 * 
+	 * @return The float
+	 */
+	public float readFloat() {
+		require(4);
+		int bits = 0;
+		
+		for (int i = 0; i < 4; i++) {
+			bits = (bits << 8) | (data[position++] & 0xFF);
+		}
+		
+		return Float.intBitsToFloat(bits);
+	}
+	
+	/**
+	 * Reads length prefixed bytes.
+	 * 
+	 * @return The bytes
+	 */
+	public byte[] readBytes() {
+		final int byteCount = readVarInt();
+		require(byteCount);
+		
+		final byte[] bytes = Arrays.copyOfRange(data, position, position + byteCount);
+		position += byteCount;
+		
+		return bytes;
+	}
+	
+	/**
+	 * Reads a length prefixed UTF-8 string.
+	 * 
+	 * @return The string
+	 */
+	public String readString() {
+		final int byteCount = readVarInt();
+		require(byteCount);
+		
+		final String value = new String(data, position, byteCount, StandardCharsets.UTF_8);
+		position += byteCount;
+		
+		return value;
+	}
+	
+	/**
+	 * Reads a material by its ID in the material table.
+	 * 
+	 * @return The material, or null if it doesn't exist on this server version
+	 */
+	public Material readMaterial() {
+		return materials[readTableId(materials.length)];
+	}
+	
+	/**
+	 * Reads an enchantment by its ID in the enchantment table.
+	 * 
+	 * @return The enchantment, or null if it doesn't exist on this server version
+	 */
+	public Enchantment readEnchantment() {
+		return enchantments[readTableId(enchantments.length)];
+	}
+	
+	private int readTableId(int tableSize) {
+		final int id = readVarInt();
+		
+		if (id < 0 || id >= tableSize) {
+			throw new IllegalArgumentException("Compact data refers to an unknown table entry");
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Gives an item which has been read as a whole the
+	 * next ID, in the same order as CompactWriter.addItem.
+	 * 
+	 * @param item The read item, null if its material doesn't exist on this server version
+	 */
+	public void addItem(ItemStack item) {
+		items.add(item);
+	}
+	
+	/**
+	 * Returns an item which has been read before by its ID.
+	 * 
+	 * @param id ID of the item
+	 * @return The item, which must be cloned before being handed out
+	 * @throws IllegalArgumentException If no item has been read with the ID
+	 */
+	public ItemStack getItem(int id) {
+		if (id < 0 || id >= items.size()) {
+			throw new IllegalArgumentException("Compact data refers to an unknown item");
+		}
+		
+		return items.get(id);
+	}
+	
+	/**
+	 * Returns whether there is data left to be read.
+	 * 
+	 * @return Whether there is data left
+	 */
+	public boolean hasRemaining() {
+		return position < data.length;
+	}
+}
@@ -0,0 +1,301 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+
+public class CompactWriter {
+	public static final int VERSION = 1;
+	
+	// Encoded table names, shared so they are only encoded once
+	private static final Map<Material,byte[]> materialNames = new ConcurrentHashMap<>();
+	private static final Map<Enchantment,byte[]> enchantmentNames = new ConcurrentHashMap<>();
+	private static final ThreadLocal<CompactWriter> threadWriter = ThreadLocal.withInitial(CompactWriter::new);
+	
+	private final Map<Material,Integer> materialIds;
+	private final List<Material> materials;
+	private final Map<Enchantment,Integer> enchantmentIds;
+	private final List<Enchantment> enchantments;
+	// Items with meta which have been written as a whole, by their ID
+	private final Map<ItemStack,Integer> itemIds;
+	private int itemCount;
+	
+	private byte[] body;
+	private int length;
+	
+	public CompactWriter() {
+		this.materialIds = new EnumMap<>(Material.class);
+		this.materials = new ArrayList<>();
+		this.enchantmentIds = new HashMap<>();
+		this.enchantments = new ArrayList<>();
+		this.itemIds = new HashMap<>();
+		this.body = new byte[256];
+	}
+	
+	/**
+	 * Returns an empty writer which is reused by the
+	 * current thread, so writing doesn't need to allocate
+	 * new buffers and tables every time.
+	 * 
+	 * @return The current thread's writer
+	 */
+	public static CompactWriter forCurrentThread() {
+		final CompactWriter writer = threadWriter.get();
+		writer.reset();
+		
+		return writer;
+	}
+	
+	/**
+	 * Clears all written data and tables while
+	 * keeping the allocated buffer.
+	 */
+	public void reset() {
+		materialIds.clear();
+		materials.clear();
+		enchantmentIds.clear();
+		enchantments.clear();
+		itemIds.clear();
+		itemCount = 0;
+		length = 0;
+	}
+	
+	private void ensureCapacity(int additionalLength) {
+		if (length + additionalLength > body.length) {
+			final byte[] grownBody = new byte[Math.max(body.length * 2, length + additionalLength)];
+			System.arraycopy(body, 0, grownBody, 0, length);
+			body = grownBody;
+		}
+	}
+	
+	/**
+	 * Writes a single byte.
+	 * 
+	 * @param value Byte to write
+	 */
+	public void writeByte(int value) {
+		ensureCapacity(1);
+		body[length++] = (byte)value;
+	}
+	
+	/**
+	 * Writes a non-negative integer using as few bytes as
+	 * possible, 7 bits per byte.
+	 * 
+	 * @param value Integer to write
+	 */
+	public void writeVarInt(int value) {
+		ensureCapacity(5);
+		
+		while ((value & ~0x7F) != 0) {
+			body[length++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		body[length++] = (byte)value;
+	}
+	
+	/**
+	 * Writes a float as its 4 IEEE 754 bytes.
+	 * 
+	 * @param value Float to write
+	 */
+	public void writeFloat(float value) {
+		final int bits = Float.floatToIntBits(value);
+		ensureCapacity(4);
+		
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			body[length++] = (byte)(bits >>> shift);
+		}
+	}
+	
+	/**
+	 * Looks up an item which has been written as a whole
+	 * before, so it can be referred to instead of being
+	 * written again.
+	 * 
+	 * @param item The item
+	 * @return ID of the equal item which was written before, or -1 if there is none
+	 */
+	public int getItemId(ItemStack item) {
+		final Integer id = itemIds.get(item);
+		
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * Gives an item which has been written as a whole the
+	 * next ID, in the same order as CompactReader.addItem.
+	 * Only items which can be referred to are looked up
+	 * later on, as comparing items without meta costs
+	 * more than writing them again.
+	 * 
+	 * @param item The written item
+	 * @param referable Whether later equal items may refer to it
+	 */
+	public void addItem(ItemStack item, boolean referable) {
+		if (referable) {
+			itemIds.putIfAbsent(item, itemCount);
+		}
+		itemCount++;
+	}
+	
+	/**
+	 * Writes bytes prefixed by their length.
+	 * 
+	 * @param bytes Bytes to write
+	 */
+	public void writeBytes(byte[] bytes) {
+		writeVarInt(bytes.length);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, body, length, bytes.length);
+		length += bytes.length;
+	}
+	
+	/**
+	 * Writes a string as its UTF-8 bytes prefixed
+	 * by their length.
+	 * 
+	 * @param value String to write
+	 */
+	public void writeString(String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		
+		writeVarInt(bytes.length);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, body, length, bytes.length);
+		length += bytes.length;
+	}
+	
+	/**
+	 * Writes the ID of a material in the material table,
+	 * adding the material to the table if needed.
+	 * 
+	 * @param material Material to write
+	 */
+	public void writeMaterial(Material material) {
+		Integer id = materialIds.get(material);
+		
+		if (id == null) {
+			id = materials.size();
+			materialIds.put(material, id);
+			materials.add(material);
+		}
+		
+		writeVarInt(id);
+	}
+	
+	/**
+	 * Writes the ID of an enchantment in the enchantment table,
+	 * adding the enchantment to the table if needed.
+	 * 
+	 * @param enchantment Enchantment to write
+	 */
+	public void writeEnchantment(Enchantment enchantment) {
+		Integer id = enchantmentIds.get(enchantment);
+		
+		if (id == null) {
+			id = enchantments.size();
+			enchantmentIds.put(enchantment, id);
+			enchantments.add(enchantment);
+		}
+		
+		writeVarInt(id);
+	}
+	
+	private static int varIntSize(int value) {
+		int size = 1;
+		
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		
+		return size;
+	}
+	
+	private static void putVarInt(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+	
+	private static byte[] getName(Material material) {
+		return materialNames.computeIfAbsent(material, key -> key.name().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static byte[] getName(Enchantment enchantment) {
+		return enchantmentNames.computeIfAbsent(enchantment, key -> key.getKey().getKey().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Returns the amount of bytes the written data takes
+	 * up including the format version and tables.
+	 * 
+	 * @return The encoded size
+	 */
+	public int size() {
+		int size = 1 + varIntSize(materials.size()) + varIntSize(enchantments.size()) + length;
+		
+		for (final Material material : materials) {
+			final int nameLength = getName(material).length;
+			size += varIntSize(nameLength) + nameLength;
+		}
+		for (final Enchantment enchantment : enchantments) {
+			final int nameLength = getName(enchantment).length;
+			size += varIntSize(nameLength) + nameLength;
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Puts the written data preceded by the format version
+	 * and the material and enchantment tables into a buffer.
+	 * 
+	 * @param buffer Buffer with at least size() bytes remaining
+	 * @throws java.nio.BufferOverflowException If the buffer is too small
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put((byte)VERSION);
+		
+		putVarInt(buffer, materials.size());
+		for (final Material material : materials) {
+			final byte[] name = getName(material);
+			putVarInt(buffer, name.length);
+			buffer.put(name);
+		}
+		
+		putVarInt(buffer, enchantments.size());
+		for (final Enchantment enchantment : enchantments) {
+			final byte[] name = getName(enchantment);
+			putVarInt(buffer, name.length);
+			buffer.put(name);
+		}
+		
+		buffer.put(body, 0, length);
+	}
+	
+	/**
+	 * Returns the written data preceded by the format
+	 * version and the material and enchantment tables.
+	 * 
+	 * @return The encoded bytes
+	 */
+	public byte[] toByteArray() {
+		final byte[] encoded = new byte[size()];
+		writeTo(ByteBuffer.wrap(encoded));
+		
+		return encoded;
+	}
+}
@@ -2,7 +2,12 @@ package tech.jossecottenier.inventorysaver;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import org.bukkit.Server;
 import org.bukkit.World;
@@ -10,16 +15,28 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 public class ControlledWorlds {
-	private static final List<World> worlds = new ArrayList<>();
+	// Replaced as a whole on every change, so readers never need a lock
+	private static volatile Snapshot snapshot = new Snapshot(Collections.emptyMap());
 	
 	/**
 	 * Getter for the worlds on which the players inventory
 	 * is saved/loaded when they join/quit respectively.
 	 * 
-	 * @return The list of worlds which are currently getting controlled
+	 * @return Immutable snapshot of the worlds which are currently getting controlled
 	 */
 	public static List<World> getWorlds() {
-		return worlds;
+		return snapshot.worlds;
+	}
+	
+	/**
+	 * Returns whether a world is controlled, without
+	 * scanning the list of controlled worlds.
+	 * 
+	 * @param world World to check
+	 * @return Whether the world is getting controlled
+	 */
+	public static boolean isControlled(World world) {
+		return world != null && snapshot.worldsByUid.containsKey(world.getUID());
 	}
 	
 	/**
@@ -30,7 +47,23 @@ public class ControlledWorlds {
 	 * @param world
 	 */
 	public static void addWorld(World world) {
-		worlds.add(world);
+		addWorlds(Collections.singletonList(world));
+	}
+	
+	/**
+	 * Adds multiple worlds to the controlled worlds
+	 * in a single step.
+	 * 
+	 * @param worlds Worlds to be added
+	 */
+	public static synchronized void addWorlds(Collection<World> worlds) {
+		final Map<UUID,World> worldsByUid = new LinkedHashMap<>(snapshot.worldsByUid);
+		
+		for (final World world : worlds) {
+			worldsByUid.put(world.getUID(), world);
+		}
+		
+		snapshot = new Snapshot(worldsByUid);
 	}
 	
 	/**
@@ -40,30 +73,75 @@ public class ControlledWorlds {
 	 * @param world World to be removed
 	 * @return Whether the world was in the list or not
 	 */
-	public static boolean removeWorld(World world) {
-		return worlds.remove(world);
+	public static synchronized boolean removeWorld(World world) {
+		if (!isControlled(world)) {
+			return false;
+		}
+		
+		final Map<UUID,World> worldsByUid = new LinkedHashMap<>(snapshot.worldsByUid);
+		worldsByUid.remove(world.getUID());
+		snapshot = new Snapshot(worldsByUid);
+		
+		return true;
+	}
+	
+	/**
+	 * Replaces all controlled worlds at once, so no
+	 * teleport ever sees a partially updated list.
+	 * 
+	 * @param worlds The new controlled worlds
+	 */
+	public static synchronized void setWorlds(Collection<World> worlds) {
+		final Map<UUID,World> worldsByUid = new LinkedHashMap<>();
+		
+		for (final World world : worlds) {
+			worldsByUid.put(world.getUID(), world);
+		}
+		
+		snapshot = new Snapshot(worldsByUid);
 	}
 	
 	/**
-	 * Adds worlds saved on a specified server listed in a 
-	 * specified YML file to the controlled worlds list.
+	 * Replaces the controlled worlds list with the worlds
+	 * saved on a specified server listed in a specified YML
+	 * file, so worlds removed from the file are no longer
+	 * controlled after a reload.
 	 * 
 	 * @param worldsFile Specified YML config file
 	 * @param server Server containing the worlds
 	 */
 	protected static void loadFromFile(File worldsFile, Server server) {
 		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(worldsFile);
+		final List<World> worlds = new ArrayList<>();
 		
 		for (final String worldName : configuration.getStringList("worlds")) {
-			worlds.add(server.getWorld(worldName));
+			final World world = server.getWorld(worldName);
+			
+			if (world == null) {
+				server.getLogger().warning(String.format("Controlled world %s is not loaded.", worldName));
+				continue;
+			}
+			worlds.add(world);
 		}
+		
+		setWorlds(worlds);
 	}
 	
 	/*
-	 * Adds worlds from an optional config.yml file
-	 * to the controlled worlds list.
+	 * Replaces the controlled worlds list with the
+	 * worlds from an optional config.yml file.
 	 */
 	public static void loadFromFile() {
 		loadFromFile(Main.getConfigFile(), Main.instance.getServer());
 	}
+	
+	private static class Snapshot {
+		private final Map<UUID,World> worldsByUid;
+		private final List<World> worlds;
+		
+		private Snapshot(Map<UUID,World> worldsByUid) {
+			this.worldsByUid = Collections.unmodifiableMap(worldsByUid);
+			this.worlds = Collections.unmodifiableList(new ArrayList<>(worldsByUid.values()));
+		}
+	}
 }
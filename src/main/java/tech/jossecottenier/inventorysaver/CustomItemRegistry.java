@@ -0,0 +1,219 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataType;
+
+public class CustomItemRegistry {
+	// Persistent data key under which the stable key of a custom item is stored
+	@SuppressWarnings("deprecation")
+	public static final NamespacedKey CUSTOM_ITEM_KEY = new NamespacedKey("inventorysaver", "custom_item");
+	
+	private final List<ItemStack> items;
+	private final Map<String,ItemStack> itemsByName;
+	private final Map<String,ItemStack> itemsByKey;
+	
+	public CustomItemRegistry() {
+		this.items = new CopyOnWriteArrayList<>();
+		this.itemsByName = new ConcurrentHashMap<>();
+		this.itemsByKey = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Registers a custom item which replaces saved items
+	 * with the same display name. If multiple custom items
+	 * share a name, the first registered one is used. Items
+	 * without a name can only be found by their key.
+	 * 
+	 * @param item Custom item to register
+	 */
+	public synchronized void register(ItemStack item) {
+		final String name = getDisplayName(item);
+		items.add(item);
+		
+		if (isNamed(name)) {
+			itemsByName.putIfAbsent(name, item);
+		}
+		
+		final String key = getKey(item);
+		if (key != null) {
+			itemsByKey.putIfAbsent(key, item);
+		}
+	}
+	
+	/**
+	 * Registers a custom item under a stable key, which is
+	 * stored in the item's persistent data so it's still
+	 * recognized after its display name has changed.
+	 * 
+	 * @param key Stable key of the custom item
+	 * @param item Custom item to register
+	 * @return Copy of the item which carries the key
+	 */
+	public ItemStack register(String key, ItemStack item) {
+		final ItemStack keyedItem = item.clone();
+		final ItemMeta meta = keyedItem.getItemMeta();
+		
+		meta.getPersistentDataContainer().set(CUSTOM_ITEM_KEY, PersistentDataType.STRING, key);
+		keyedItem.setItemMeta(meta);
+		register(keyedItem);
+		
+		return keyedItem;
+	}
+	
+	/**
+	 * Registers multiple custom items at once.
+	 * 
+	 * @param items Custom items to register
+	 */
+	public synchronized void registerAll(Collection<ItemStack> items) {
+		for (final ItemStack item : items) {
+			register(item);
+		}
+	}
+	
+	/**
+	 * Registers multiple custom items under their
+	 * stable keys at once.
+	 * 
+	 * @param items Custom items to register by their key
+	 * @return Copies of the items which carry their key
+	 */
+	public synchronized List<ItemStack> registerAll(Map<String,ItemStack> items) {
+		final List<ItemStack> keyedItems = new ArrayList<>(items.size());
+		
+		for (final Map.Entry<String,ItemStack> entry : items.entrySet()) {
+			keyedItems.add(register(entry.getKey(), entry.getValue()));
+		}
+		
+		return keyedItems;
+	}
+	
+	/**
+	 * Unregisters a custom item. Another custom item with
+	 * the same name or key takes its place, if there is one.
+	 * 
+	 * @param item Custom item to unregister
+	 * @return Whether the custom item was registered
+	 */
+	public synchronized boolean unregister(ItemStack item) {
+		if (!items.remove(item)) {
+			return false;
+		}
+		
+		final String name = getDisplayName(item);
+		final String key = getKey(item);
+		if (isNamed(name)) {
+			itemsByName.remove(name);
+		}
+		if (key != null) {
+			itemsByKey.remove(key);
+		}
+		
+		// Falling back to the next registered item with the same name or key
+		for (final ItemStack remainingItem : items) {
+			if (isNamed(name) && name.equals(getDisplayName(remainingItem))) {
+				itemsByName.putIfAbsent(name, remainingItem);
+			}
+			if (key != null && key.equals(getKey(remainingItem))) {
+				itemsByKey.putIfAbsent(key, remainingItem);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the custom item with a specified
+	 * display name.
+	 * 
+	 * @param name Display name of the custom item
+	 * @return The custom item, or null if there is none
+	 */
+	public ItemStack getByName(String name) {
+		return name == null ? null : itemsByName.get(name);
+	}
+	
+	/**
+	 * Returns the custom item registered under
+	 * a specified stable key.
+	 * 
+	 * @param key Stable key of the custom item
+	 * @return The custom item, or null if there is none
+	 */
+	public ItemStack getByKey(String key) {
+		return key == null ? null : itemsByKey.get(key);
+	}
+	
+	/**
+	 * Returns all registered custom items in the
+	 * order in which they were registered.
+	 * 
+	 * @return Unmodifiable list of the custom items
+	 */
+	public List<ItemStack> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+	
+	private static String getDisplayName(ItemStack item) {
+		return item.getItemMeta().getDisplayName();
+	}
+	
+	private static boolean isNamed(String name) {
+		return name != null && !name.isEmpty();
+	}
+	
+	/**
+	 * Reads the stable custom item key stored
+	 * in an item's persistent data.
+	 * 
+	 * @param item The item
+	 * @return The key, or null if the item has none
+	 */
+	public static String getKey(ItemStack item) {
+		return item.hasItemMeta() ? getKey(item.getItemMeta()) : null;
+	}
+	
+	/**
+	 * Reads the stable custom item key stored
+	 * in the persistent data of item meta.
+	 * 
+	 * @param meta Meta of the item
+	 * @return The key, or null if the item has none
+	 */
+	public static String getKey(ItemMeta meta) {
+		return meta.getPersistentDataContainer().get(CUSTOM_ITEM_KEY, PersistentDataType.STRING);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		
+		if (!(other instanceof CustomItemRegistry)) {
+			return false;
+		}
+		
+		return items.equals(((CustomItemRegistry)other).items);
+	}
+	
+	@Override
+	public int hashCode() {
+		return items.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return items.toString();
+	}
+}
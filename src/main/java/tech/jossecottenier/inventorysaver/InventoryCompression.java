@@ -0,0 +1,171 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class InventoryCompression {
+	public static final byte STRING_FORMAT = 0;
+	public static final byte COMPACT_FORMAT = 1;
+	public static final byte PLAYER_STATE_FORMAT = 2;
+	// Identifies the dictionary compressed data was written with, so it can be changed later on
+	private static final byte DICTIONARY_VERSION = 2;
+	// Dictionary of data written before the dictionary was built from actual item strings
+	private static final byte LEGACY_DICTIONARY_VERSION = 1;
+	// Format and dictionary version in front of the compressed data
+	private static final int HEADER_SIZE = 2;
+	
+	// Tokens of both dictionaries, in the order they are written in, which mustn't change for the legacy dictionary
+	private static final String[] ENCHANTMENTS = new String[] { "aqua_affinity", "bane_of_arthropods", "blast_protection", "depth_strider", "feather_falling",
+			"fire_aspect", "fire_protection", "flame", "infinity", "knockback", "looting", "projectile_protection", "respiration", "silk_touch",
+			"smite", "thorns", "power", "punch", "fortune", "efficiency", "mending", "protection", "sharpness", "unbreaking" };
+	private static final String[] MATERIALS = new String[] { "ARROW", "BOW", "SHIELD", "TORCH", "BREAD", "COOKED_BEEF", "OAK_LOG", "OAK_PLANKS", "DIRT", "STONE",
+			"COBBLESTONE", "IRON_INGOT", "GOLD_INGOT", "DIAMOND", "IRON_SWORD", "IRON_PICKAXE", "IRON_AXE", "IRON_SHOVEL", "DIAMOND_SHOVEL",
+			"DIAMOND_AXE", "DIAMOND_HELMET", "DIAMOND_CHESTPLATE", "DIAMOND_LEGGINGS", "DIAMOND_BOOTS", "DIAMOND_PICKAXE", "DIAMOND_SWORD" };
+	
+	private static final byte[] DICTIONARY = createDictionary();
+	private static final byte[] LEGACY_DICTIONARY = createLegacyDictionary();
+	// Reused by each thread as creating them allocates native memory
+	private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION));
+	private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+	
+	/**
+	 * Creates the preset dictionary out of the tokens which
+	 * occur in almost every saved inventory. The items are
+	 * serialized the same way as saved ones, so they match
+	 * what is actually written. Deflate finds matches closer
+	 * to the end of the dictionary with fewer bits, so the
+	 * most common tokens come last.
+	 * 
+	 * @return The dictionary
+	 */
+	private static byte[] createDictionary() {
+		final StringBuilder dictionary = new StringBuilder(2048);
+		
+		for (final String enchantment : ENCHANTMENTS) {
+			dictionary.append(enchantment).append(":1;").append(enchantment).append(":3;");
+		}
+		for (final String material : MATERIALS) {
+			dictionary.append(SavedItem.serializePlain(material, 1)).append(ItemStringReader.ITEM_SEPARATOR);
+		}
+		for (final String material : MATERIALS) {
+			dictionary.append(SavedItem.serializePlain(material, 64)).append(ItemStringReader.ITEM_SEPARATOR);
+		}
+		// Runs of empty slots, and the header every inventory starts with
+		for (int i = 0; i < 16; i++) {
+			dictionary.append(ItemStringReader.ITEM_SEPARATOR);
+		}
+		dictionary.append(ItemStringReader.HEADER);
+		
+		return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Creates the dictionary which inventories compressed
+	 * with the first version of the dictionary need to be
+	 * decompressed. It has to stay exactly the same.
+	 * 
+	 * @return The legacy dictionary
+	 */
+	private static byte[] createLegacyDictionary() {
+		final StringBuilder dictionary = new StringBuilder(2048);
+		
+		for (final String enchantment : ENCHANTMENTS) {
+			dictionary.append(enchantment).append(":1;").append(enchantment).append(":3;");
+		}
+		for (final String material : MATERIALS) {
+			dictionary.append("m=").append(material).append(",a=1,n=null,d=0,e=-");
+		}
+		for (final String material : MATERIALS) {
+			dictionary.append("m=").append(material).append(",a=64,n=null,d=0-");
+		}
+		dictionary.append("----------------,a=1,n=null,d=0-m=");
+		
+		return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Compresses a serialized inventory using the preset
+	 * dictionary.
+	 * 
+	 * @param format Format of the serialized inventory
+	 * @param data The serialized inventory
+	 * @return The compressed inventory
+	 */
+	public static byte[] compress(byte format, byte[] data) {
+		final Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setDictionary(DICTIONARY);
+		deflater.setInput(data);
+		deflater.finish();
+		
+		byte[] compressedData = new byte[HEADER_SIZE + data.length / 2 + 64];
+		compressedData[0] = format;
+		compressedData[1] = DICTIONARY_VERSION;
+		int length = HEADER_SIZE;
+		
+		while (!deflater.finished()) {
+			if (length == compressedData.length) {
+				compressedData = Arrays.copyOf(compressedData, compressedData.length * 2);
+			}
+			length += deflater.deflate(compressedData, length, compressedData.length - length);
+		}
+		
+		return Arrays.copyOf(compressedData, length);
+	}
+	
+	/**
+	 * Returns the format of a compressed inventory.
+	 * 
+	 * @param compressedData The compressed inventory
+	 * @return Format of the serialized inventory
+	 */
+	public static byte getFormat(byte[] compressedData) {
+		return compressedData[0];
+	}
+	
+	/**
+	 * Decompresses a compressed inventory.
+	 * 
+	 * @param compressedData The compressed inventory
+	 * @return The serialized inventory
+	 * @throws IllegalArgumentException If the data is corrupt or was written with an unknown dictionary
+	 */
+	public static byte[] decompress(byte[] compressedData) {
+		if (compressedData.length < HEADER_SIZE || (compressedData[1] != DICTIONARY_VERSION && compressedData[1] != LEGACY_DICTIONARY_VERSION)) {
+			throw new IllegalArgumentException("Unknown compressed inventory format");
+		}
+		
+		final byte[] dictionary = compressedData[1] == DICTIONARY_VERSION ? DICTIONARY : LEGACY_DICTIONARY;
+		
+		final Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(compressedData, HEADER_SIZE, compressedData.length - HEADER_SIZE);
+		
+		byte[] data = new byte[compressedData.length * 4];
+		int length = 0;
+		
+		try {
+			while (!inflater.finished()) {
+				if (length == data.length) {
+					data = Arrays.copyOf(data, data.length * 2);
+				}
+				
+				final int inflatedLength = inflater.inflate(data, length, data.length - length);
+				
+				if (inflatedLength == 0 && inflater.needsDictionary()) {
+					inflater.setDictionary(dictionary);
+				} else if (inflatedLength == 0 && inflater.needsInput()) {
+					throw new IllegalArgumentException("Compressed inventory is cut off");
+				}
+				length += inflatedLength;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Compressed inventory is corrupt", e);
+		}
+		
+		return Arrays.copyOf(data, length);
+	}
+}
@@ -0,0 +1,174 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class InventoryDelta extends StoredInventory {
+	private final int size;
+	private final int[] slots;
+	private final String[] items;
+	
+	/**
+	 * Creates a delta which only holds the items of the
+	 * slots that changed since a previous save.
+	 * 
+	 * @param uuid UUID of the player
+	 * @param name Name of the player
+	 * @param inventory The whole serialized inventory, or null if it isn't known
+	 * @param size Amount of slots in the inventory
+	 * @param slots Indices of the changed slots
+	 * @param items Serialized items of the changed slots
+	 */
+	public InventoryDelta(UUID uuid, String name, String inventory, int size, int[] slots, String[] items) {
+		super(uuid, name, inventory);
+		this.size = size;
+		this.slots = slots;
+		this.items = items;
+	}
+	
+	/**
+	 * Getter for the amount of slots in the inventory.
+	 * 
+	 * @return Amount of slots
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Getter for the indices of the changed slots.
+	 * 
+	 * @return Indices of the changed slots
+	 */
+	public int[] getSlots() {
+		return slots;
+	}
+	
+	/**
+	 * Getter for the serialized items of the changed
+	 * slots, in the same order as their indices.
+	 * 
+	 * @return Serialized items, empty strings for empty slots
+	 */
+	public String[] getItems() {
+		return items;
+	}
+	
+	/**
+	 * Applies the changed slots to a previous save,
+	 * keeping its version header.
+	 * 
+	 * @param inventory The previously serialized inventory
+	 * @return The serialized inventory after the changes
+	 */
+	public String applyTo(String inventory) {
+		final String[] inventoryItems = Arrays.copyOf(split(inventory), size);
+		
+		for (int i = 0; i < slots.length; i++) {
+			inventoryItems[slots[i]] = items[i];
+		}
+		
+		final StringBuilder serialization = new StringBuilder(inventory.length());
+		serialization.append(inventory, 0, ItemStringReader.getHeaderLength(inventory));
+		
+		for (int i = 0; i < inventoryItems.length; i++) {
+			if (i > 0) {
+				serialization.append(ItemStringReader.ITEM_SEPARATOR);
+			}
+			
+			if (inventoryItems[i] != null) {
+				serialization.append(inventoryItems[i]);
+			}
+		}
+		
+		return serialization.toString();
+	}
+	
+	/**
+	 * Creates a delta of the slots whose fingerprints differ
+	 * from those of a previous save.
+	 * 
+	 * @param inventory The whole save
+	 * @param items Serialized items of every slot of the save
+	 * @param fingerprint Fingerprint of the save
+	 * @param previousFingerprint Fingerprint of the previous save
+	 * @return Delta of the changed slots
+	 */
+	public static InventoryDelta between(StoredInventory inventory, String[] items, long[] fingerprint, long[] previousFingerprint) {
+		int changedSlots = 0;
+		
+		for (int i = 0; i < fingerprint.length; i++) {
+			if (i >= previousFingerprint.length || fingerprint[i] != previousFingerprint[i]) {
+				changedSlots++;
+			}
+		}
+		
+		final int[] slots = new int[changedSlots];
+		final String[] changedItems = new String[changedSlots];
+		int j = 0;
+		
+		for (int i = 0; i < fingerprint.length; i++) {
+			if (i >= previousFingerprint.length || fingerprint[i] != previousFingerprint[i]) {
+				slots[j] = i;
+				changedItems[j] = items[i];
+				j++;
+			}
+		}
+		
+		return new InventoryDelta(inventory.getUuid(), inventory.getName(), inventory.getInventory(), items.length, slots, changedItems);
+	}
+	
+	/**
+	 * Splits an inventory serialized in the string format
+	 * into the serialized items of its slots, leaving out
+	 * its version header.
+	 * 
+	 * @param inventory The serialized inventory
+	 * @return Serialized items of every slot, empty strings for empty slots
+	 * @throws IllegalArgumentException If the inventory isn't in the string format
+	 */
+	public static String[] split(String inventory) {
+		final ItemStringReader reader = new ItemStringReader(inventory);
+		final List<String> items = new ArrayList<>();
+		int start = reader.getPosition();
+		
+		while (true) {
+			reader.skipItem();
+			items.add(inventory.substring(start, reader.getPosition()));
+			
+			if (!reader.skipItemSeparator()) {
+				break;
+			}
+			start = reader.getPosition();
+		}
+		
+		return items.toArray(new String[0]);
+	}
+	
+	/**
+	 * Computes a 64 bit hash of every serialized item, so
+	 * changed slots can be found without keeping the items
+	 * of the previous save around.
+	 * 
+	 * @param items Serialized items of every slot
+	 * @return Hash per slot
+	 */
+	public static long[] fingerprint(String[] items) {
+		final long[] fingerprint = new long[items.length];
+		
+		for (int i = 0; i < items.length; i++) {
+			// 64 bit FNV-1a, so colliding items are practically impossible
+			long hash = 0xcbf29ce484222325L;
+			
+			for (int j = 0; j < items[i].length(); j++) {
+				hash ^= items[i].charAt(j);
+				hash *= 0x100000001b3L;
+			}
+			fingerprint[i] = hash;
+		}
+		
+		return fingerprint;
+	}
+}
@@ -0,0 +1,273 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+public class InventoryJournal {
+	public static final String FILE_NAME = "journal.log";
+	// Length and checksum in front of every record
+	private static final int HEADER_SIZE = 8;
+	private static final byte FULL_RECORD = 0;
+	private static final byte DELTA_RECORD = 1;
+	
+	private static final Map<File,InventoryJournal> journals = new ConcurrentHashMap<>();
+	
+	private final File file;
+	
+	protected InventoryJournal(File folder) {
+		this.file = new File(folder, FILE_NAME);
+	}
+	
+	/**
+	 * Gets the journal of a world's inventory folder. There
+	 * is one instance per folder, which all appends to and
+	 * reads from the journal are synchronized on.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @return The world's journal
+	 */
+	public static InventoryJournal forFolder(File folder) {
+		return journals.computeIfAbsent(folder.getAbsoluteFile(), InventoryJournal::new);
+	}
+	
+	/**
+	 * Appends saved inventories to the end of the journal
+	 * in a single sequential write and waits until they
+	 * have reached the disk. Deltas are written as such,
+	 * and only hold the slots which changed. If the write
+	 * fails partway, the journal is cut back to its previous
+	 * size, so later appends don't end up behind a torn
+	 * record which replaying stops at.
+	 * 
+	 * @param records The saved inventories
+	 * @return Size of the journal after appending
+	 * @throws IOException If the journal could not be written
+	 */
+	public synchronized long append(Collection<StoredInventory> records) throws IOException {
+		final byte[][] payloads = new byte[records.size()][];
+		int size = 0;
+		int i = 0;
+		
+		for (final StoredInventory record : records) {
+			payloads[i] = toBytes(record);
+			size += HEADER_SIZE + payloads[i].length;
+			i++;
+		}
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		final CRC32 checksum = new CRC32();
+		
+		for (final byte[] payload : payloads) {
+			checksum.reset();
+			checksum.update(payload);
+			buffer.putInt(payload.length).putInt((int)checksum.getValue()).put(payload);
+		}
+		buffer.flip();
+		
+		file.getParentFile().mkdirs();
+		
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			final long previousSize = channel.size();
+			
+			try {
+				write(channel, buffer);
+				channel.force(false);
+			} catch (IOException e) {
+				channel.truncate(previousSize);
+				throw e;
+			}
+			
+			InventoryMetrics.getInstance().add(InventoryMetrics.Counter.BYTES_WRITTEN, size);
+			return channel.size();
+		}
+	}
+	
+	/**
+	 * Writes all remaining bytes of a buffer to the journal.
+	 * 
+	 * @param channel Channel of the journal
+	 * @param buffer The records to write
+	 * @throws IOException If the records could not be written
+	 */
+	protected void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * Reads back the latest record of every player in the
+	 * journal, applying deltas to the records before them.
+	 * A torn or corrupt tail, left behind by a crash during
+	 * an append, is cut off.
+	 * 
+	 * @return The latest records by player UUID, empty if there is no journal
+	 * @throws IOException If the journal could not be read
+	 */
+	public synchronized Map<UUID,StoredInventory> replay() throws IOException {
+		final Map<UUID,StoredInventory> records = new LinkedHashMap<>();
+		
+		if (!file.exists()) {
+			return records;
+		}
+		
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final ByteBuffer journal = ByteBuffer.allocate((int)channel.size());
+			while (journal.hasRemaining()) {
+				if (channel.read(journal) < 0) {
+					break;
+				}
+			}
+			journal.flip();
+			
+			final CRC32 checksum = new CRC32();
+			int validSize = 0;
+			
+			while (journal.remaining() >= HEADER_SIZE) {
+				final int length = journal.getInt();
+				final int expectedChecksum = journal.getInt();
+				
+				if (length < 0 || length > journal.remaining()) {
+					break;
+				}
+				
+				final byte[] payload = new byte[length];
+				journal.get(payload);
+				checksum.reset();
+				checksum.update(payload);
+				
+				if ((int)checksum.getValue() != expectedChecksum) {
+					break;
+				}
+				
+				StoredInventory record = fromBytes(payload);
+				
+				if (record instanceof InventoryDelta) {
+					final StoredInventory previousRecord = records.get(record.getUuid());
+					// A delta is only ever appended after a record of the same player
+					record = previousRecord == null ? null : new StoredInventory(record.getUuid(), record.getName(), ((InventoryDelta)record).applyTo(previousRecord.getInventory()));
+				}
+				
+				if (record != null) {
+					// Removing first so the map stays in order of the latest save
+					records.remove(record.getUuid());
+					records.put(record.getUuid(), record);
+				}
+				validSize = journal.position();
+			}
+			
+			if (validSize < channel.size()) {
+				channel.truncate(validSize);
+			}
+		}
+		
+		return records;
+	}
+	
+	/**
+	 * Returns the size of the journal on disk.
+	 * 
+	 * @return Size of the journal in bytes, 0 if there is none
+	 */
+	public synchronized long size() {
+		return file.length();
+	}
+	
+	/**
+	 * Deletes the journal once its records have
+	 * been written to the snapshot.
+	 * 
+	 * @throws IOException If the journal could not be deleted
+	 */
+	public synchronized void delete() throws IOException {
+		if (file.exists() && !file.delete()) {
+			throw new IOException(String.format("Could not delete %s", file));
+		}
+	}
+	
+	private static byte[] toBytes(StoredInventory record) {
+		final byte[] name = record.getName() == null ? null : record.getName().getBytes(StandardCharsets.UTF_8);
+		final byte[][] items;
+		int size = 1 + 16 + 4 + (name == null ? 0 : name.length);
+		
+		if (record instanceof InventoryDelta) {
+			final String[] changedItems = ((InventoryDelta)record).getItems();
+			items = new byte[changedItems.length][];
+			size += 8;
+			
+			for (int i = 0; i < items.length; i++) {
+				items[i] = changedItems[i].getBytes(StandardCharsets.UTF_8);
+				size += 8 + items[i].length;
+			}
+		} else {
+			items = new byte[][] { record.getInventory().getBytes(StandardCharsets.UTF_8) };
+			size += 4 + items[0].length;
+		}
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(record instanceof InventoryDelta ? DELTA_RECORD : FULL_RECORD);
+		buffer.putLong(record.getUuid().getMostSignificantBits()).putLong(record.getUuid().getLeastSignificantBits());
+		buffer.putInt(name == null ? -1 : name.length);
+		if (name != null) {
+			buffer.put(name);
+		}
+		
+		if (record instanceof InventoryDelta) {
+			final int[] slots = ((InventoryDelta)record).getSlots();
+			buffer.putInt(((InventoryDelta)record).getSize()).putInt(slots.length);
+			
+			for (int i = 0; i < slots.length; i++) {
+				buffer.putInt(slots[i]).putInt(items[i].length).put(items[i]);
+			}
+		} else {
+			buffer.putInt(items[0].length).put(items[0]);
+		}
+		
+		return buffer.array();
+	}
+	
+	private static StoredInventory fromBytes(byte[] bytes) {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		final byte type = buffer.get();
+		final UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+		final String name = readString(buffer);
+		
+		if (type == DELTA_RECORD) {
+			final int size = buffer.getInt();
+			final int[] slots = new int[buffer.getInt()];
+			final String[] items = new String[slots.length];
+			
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = buffer.getInt();
+				items[i] = readString(buffer);
+			}
+			
+			return new InventoryDelta(uuid, name, null, size, slots, items);
+		}
+		
+		return new StoredInventory(uuid, name, readString(buffer));
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		
+		if (length < 0) {
+			return null;
+		}
+		
+		final String string = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		
+		return string;
+	}
+}
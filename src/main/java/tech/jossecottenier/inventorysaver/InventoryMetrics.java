@@ -0,0 +1,281 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.beans.ConstructorProperties;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class InventoryMetrics implements InventoryMetricsMXBean {
+	public static final String OBJECT_NAME = "tech.jossecottenier.inventorysaver:type=InventoryMetrics";
+	
+	private static final InventoryMetrics instance = new InventoryMetrics();
+	
+	private final Map<Operation,Latency> latencies;
+	private final Map<Counter,LongAdder> counters;
+	
+	public enum Operation {
+		SAVE,
+		LOAD,
+		SERIALIZATION,
+		DESERIALIZATION,
+		STORAGE_READ,
+		STORAGE_WRITE
+	}
+	
+	public enum Counter {
+		COALESCED_SAVES,
+		CACHE_HITS,
+		CACHE_MISSES,
+		BYTES_WRITTEN
+	}
+	
+	public InventoryMetrics() {
+		this.latencies = new EnumMap<>(Operation.class);
+		this.counters = new EnumMap<>(Counter.class);
+		
+		for (final Operation operation : Operation.values()) {
+			latencies.put(operation, new Latency());
+		}
+		for (final Counter counter : Counter.values()) {
+			counters.put(counter, new LongAdder());
+		}
+	}
+	
+	/**
+	 * Getter for the metrics shared by all InventorySaver
+	 * instances, which are also exposed through JMX.
+	 * 
+	 * @return The shared metrics
+	 */
+	public static InventoryMetrics getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Records how long an operation took. Can be called
+	 * from any thread without blocking.
+	 * 
+	 * @param operation The timed operation
+	 * @param startTime Value of System.nanoTime() when the operation started
+	 */
+	public void record(Operation operation, long startTime) {
+		latencies.get(operation).record(System.nanoTime() - startTime);
+	}
+	
+	/**
+	 * Adds an amount to a counter.
+	 * 
+	 * @param counter Counter to add to
+	 * @param amount Amount to add
+	 */
+	public void add(Counter counter, long amount) {
+		counters.get(counter).add(amount);
+	}
+	
+	/**
+	 * Increments a counter by one.
+	 * 
+	 * @param counter Counter to increment
+	 */
+	public void increment(Counter counter) {
+		counters.get(counter).increment();
+	}
+	
+	/**
+	 * Returns the latencies recorded for an operation.
+	 * 
+	 * @param operation The timed operation
+	 * @return Snapshot of the operation's latencies
+	 */
+	public LatencySnapshot getLatency(Operation operation) {
+		return latencies.get(operation).snapshot();
+	}
+	
+	/**
+	 * Returns the current value of a counter.
+	 * 
+	 * @param counter The counter
+	 * @return Value of the counter
+	 */
+	public long get(Counter counter) {
+		return counters.get(counter).sum();
+	}
+	
+	@Override
+	public LatencySnapshot getSaveLatency() {
+		return getLatency(Operation.SAVE);
+	}
+	
+	@Override
+	public LatencySnapshot getLoadLatency() {
+		return getLatency(Operation.LOAD);
+	}
+	
+	@Override
+	public LatencySnapshot getSerializationLatency() {
+		return getLatency(Operation.SERIALIZATION);
+	}
+	
+	@Override
+	public LatencySnapshot getDeserializationLatency() {
+		return getLatency(Operation.DESERIALIZATION);
+	}
+	
+	@Override
+	public LatencySnapshot getStorageReadLatency() {
+		return getLatency(Operation.STORAGE_READ);
+	}
+	
+	@Override
+	public LatencySnapshot getStorageWriteLatency() {
+		return getLatency(Operation.STORAGE_WRITE);
+	}
+	
+	@Override
+	public long getCoalescedSaves() {
+		return get(Counter.COALESCED_SAVES);
+	}
+	
+	@Override
+	public long getCacheHits() {
+		return get(Counter.CACHE_HITS);
+	}
+	
+	@Override
+	public long getCacheMisses() {
+		return get(Counter.CACHE_MISSES);
+	}
+	
+	@Override
+	public long getBytesWritten() {
+		return get(Counter.BYTES_WRITTEN);
+	}
+	
+	@Override
+	public int getQueueDepth() {
+		return InventoryWriter.getInstanceQueueDepth();
+	}
+	
+	/**
+	 * Clears all latencies and counters.
+	 */
+	@Override
+	public void reset() {
+		for (final Latency latency : latencies.values()) {
+			latency.reset();
+		}
+		for (final LongAdder counter : counters.values()) {
+			counter.reset();
+		}
+	}
+	
+	/*
+	 * Histogram of latencies with a bucket per power of two
+	 * nanoseconds, so recording is a single increment and
+	 * percentiles are accurate to within a factor of two.
+	 */
+	private static class Latency {
+		private final LongAdder[] buckets;
+		private final LongAdder total;
+		private final LongAccumulator max;
+		
+		private Latency() {
+			this.buckets = new LongAdder[64];
+			this.total = new LongAdder();
+			this.max = new LongAccumulator(Math::max, 0);
+			
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+		
+		private void record(long nanos) {
+			nanos = Math.max(1, nanos);
+			buckets[63 - Long.numberOfLeadingZeros(nanos)].increment();
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+		
+		private LatencySnapshot snapshot() {
+			final long[] counts = new long[buckets.length];
+			long recorded = 0;
+			
+			for (int i = 0; i < buckets.length; i++) {
+				counts[i] = buckets[i].sum();
+				recorded += counts[i];
+			}
+			
+			final long totalNanos = total.sum();
+			
+			return new LatencySnapshot(recorded, recorded == 0 ? 0 : totalNanos / recorded / 1000,
+					percentile(counts, recorded, 0.5), percentile(counts, recorded, 0.99), max.get() / 1000);
+		}
+		
+		// Upper bound of the bucket in which the percentile falls, in microseconds
+		private static long percentile(long[] counts, long recorded, double percentile) {
+			final long rank = (long)Math.ceil(recorded * percentile);
+			long seen = 0;
+			
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				
+				if (seen >= rank && seen > 0) {
+					return ((1L << i) * 2 - 1) / 1000;
+				}
+			}
+			
+			return 0;
+		}
+		
+		private void reset() {
+			for (final LongAdder bucket : buckets) {
+				bucket.reset();
+			}
+			total.reset();
+			max.reset();
+		}
+	}
+	
+	public static class LatencySnapshot {
+		private final long count;
+		private final long meanMicros;
+		private final long medianMicros;
+		private final long p99Micros;
+		private final long maxMicros;
+		
+		@ConstructorProperties({ "count", "meanMicros", "medianMicros", "p99Micros", "maxMicros" })
+		public LatencySnapshot(long count, long meanMicros, long medianMicros, long p99Micros, long maxMicros) {
+			this.count = count;
+			this.meanMicros = meanMicros;
+			this.medianMicros = medianMicros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public long getMeanMicros() {
+			return meanMicros;
+		}
+		
+		public long getMedianMicros() {
+			return medianMicros;
+		}
+		
+		public long getP99Micros() {
+			return p99Micros;
+		}
+		
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%d (mean %d \u00b5s, median %d \u00b5s, p99 %d \u00b5s, max %d \u00b5s)", count, meanMicros, medianMicros, p99Micros, maxMicros);
+		}
+	}
+}
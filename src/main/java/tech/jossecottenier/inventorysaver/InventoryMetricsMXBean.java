@@ -0,0 +1,27 @@
+package tech.jossecottenier.inventorysaver;
+
+public interface InventoryMetricsMXBean {
+	InventoryMetrics.LatencySnapshot getSaveLatency();
+	
+	InventoryMetrics.LatencySnapshot getLoadLatency();
+	
+	InventoryMetrics.LatencySnapshot getSerializationLatency();
+	
+	InventoryMetrics.LatencySnapshot getDeserializationLatency();
+	
+	InventoryMetrics.LatencySnapshot getStorageReadLatency();
+	
+	InventoryMetrics.LatencySnapshot getStorageWriteLatency();
+	
+	long getCoalescedSaves();
+	
+	long getCacheHits();
+	
+	long getCacheMisses();
+	
+	long getBytesWritten();
+	
+	int getQueueDepth();
+	
+	void reset();
+}
@@ -0,0 +1,137 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class InventoryMigrator {
+	// Time between two progress reports
+	private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+	
+	private final InventorySaver inventorySaver;
+	private final YamlInventoryStorage storage;
+	private final Logger logger;
+	private volatile boolean cancelled;
+	
+	public InventoryMigrator(InventorySaver inventorySaver, YamlInventoryStorage storage, Logger logger) {
+		this.inventorySaver = inventorySaver;
+		this.storage = storage;
+		this.logger = logger;
+	}
+	
+	/**
+	 * Converts every inventory saved in a world's folder to
+	 * the current version of the format which the inventory
+	 * saver is set to store inventories in. The player files
+	 * are streamed from the folder and converted one at a
+	 * time, so memory use doesn't grow with the amount of
+	 * players. Progress and throughput are logged while the
+	 * migration runs. Inventories which can't be read are
+	 * left as they are. The world's journal is compacted
+	 * first, so the saves in it are converted as well
+	 * instead of being compacted over the converted files
+	 * later on. Saves appended during the migration are
+	 * already in the current format.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @return The amount of converted inventories
+	 * @throws IOException If the journal could not be compacted or the folder could not be read
+	 */
+	public int migrate(File folder) throws IOException {
+		storage.compact(folder);
+		
+		final long total = countPlayerFiles(folder);
+		final long startTime = System.nanoTime();
+		long nextReport = startTime + REPORT_INTERVAL;
+		long processed = 0;
+		int converted = 0;
+		int failed = 0;
+		
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(folder.toPath(), "*.yml")) {
+			for (final Path file : files) {
+				if (cancelled) {
+					logger.warning(String.format("Migration of %s was cancelled after %d of %d inventories.", folder.getName(), processed, total));
+					break;
+				}
+				
+				final UUID uuid = getUuid(file);
+				
+				if (uuid == null) {
+					continue;
+				}
+				
+				try {
+					if (storage.rewritePlayerFile(folder, uuid, inventorySaver::convertSerialization)) {
+						converted++;
+					}
+				} catch (IllegalArgumentException | IOException e) {
+					logger.warning(String.format("Could not migrate the inventory in %s: %s", file.getFileName(), e.getMessage()));
+					failed++;
+				}
+				processed++;
+				
+				final long now = System.nanoTime();
+				
+				if (now >= nextReport) {
+					logger.info(String.format("Migrating %s: %d of %d inventories (%d%%), %.0f inventories/s", folder.getName(), processed, total, processed * 100 / Math.max(1, total), getThroughput(processed, now - startTime)));
+					nextReport = now + REPORT_INTERVAL;
+				}
+			}
+		}
+		
+		storage.collectItems(folder);
+		
+		final long duration = System.nanoTime() - startTime;
+		logger.info(String.format("Migrated %s: converted %d of %d inventories in %.1f s (%.0f inventories/s), %d could not be read.", folder.getName(), converted, processed, duration / 1e9, getThroughput(processed, duration), failed));
+		
+		return converted;
+	}
+	
+	/**
+	 * Stops the running migration after the inventory
+	 * which is being converted.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	private static long countPlayerFiles(File folder) throws IOException {
+		long count = 0;
+		
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(folder.toPath(), "*.yml")) {
+			for (final Path file : files) {
+				if (getUuid(file) != null) {
+					count++;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Gets the UUID of the player whose inventory is in
+	 * a file, if it is a player file.
+	 * 
+	 * @param file The file
+	 * @return UUID of the player, or null if the file isn't a player file
+	 */
+	private static UUID getUuid(Path file) {
+		final String name = file.getFileName().toString();
+		
+		try {
+			return UUID.fromString(name.substring(0, name.length() - 4));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	private static double getThroughput(long inventories, long duration) {
+		return duration == 0 ? 0 : inventories * 1e9 / duration;
+	}
+}
@@ -2,15 +2,20 @@ package tech.jossecottenier.inventorysaver;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -24,12 +29,33 @@ import org.bukkit.plugin.java.JavaPlugin;
 import net.md_5.bungee.api.ChatColor;
 
 public class InventorySaver implements Listener,CommandExecutor {
-	private final List<ItemStack> customItems;
+	// Marks serializations which hold Base64 encoded compact data
+	protected static final String COMPACT_PREFIX = "c:";
+	// Marks serializations which hold Base64 encoded compressed data of either format
+	protected static final String COMPRESSED_PREFIX = "z:";
+	// Marks serializations which hold a Base64 encoded full player state
+	protected static final String PLAYER_STATE_PREFIX = "s:";
+	private static final int MAX_BUFFER_CAPACITY = 1 << 16;
+	// Amount of slots in a player inventory
+	private static final int DEFAULT_INVENTORY_SIZE = 41;
+	// Reused by each thread so serializing doesn't allocate a new buffer every time
+	private static final ThreadLocal<StringBuilder> serializationBuffer = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+	// Inventories which are decoded ahead of a teleport, by player file
+	private static final Map<File,PrefetchedInventory> prefetchedInventories = new ConcurrentHashMap<>();
+	// Saves which wait for newer saves of the same player to replace them, by player file
+	private static final Map<File,CoalescedSave> coalescedSaves = new HashMap<>();
+	
+	// Safe to be used by other plugins from any thread, see the API section of the README
+	private final CustomItemRegistry customItems;
 	private final Map<UUID,Long> joinTimes;
+	private volatile boolean compactFormat;
+	private volatile boolean compression;
+	private volatile long coalescingWindow;
+	private volatile boolean playerState;
 	
 	public InventorySaver() {
-		this.customItems = new ArrayList<>();
-		this.joinTimes = new HashMap<>();
+		this.customItems = new CustomItemRegistry();
+		this.joinTimes = new ConcurrentHashMap<>();
 	}
 	
 	/**
@@ -41,7 +67,30 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * @param customItem Custom item to add
 	 */
 	public void addCustomItem(ItemStack customItem) {
-		customItems.add(customItem);
+		customItems.register(customItem);
+	}
+	
+	/**
+	 * Adds multiple ItemStacks to the list of
+	 * custom items at once
+	 * 
+	 * @param customItems Custom items to add
+	 */
+	public void addCustomItems(Collection<ItemStack> customItems) {
+		this.customItems.registerAll(customItems);
+	}
+	
+	/**
+	 * Adds an ItemStack to the list of custom items
+	 * under a stable key, so it is also recognized
+	 * by that key when its name has changed
+	 * 
+	 * @param key Stable key of the custom item
+	 * @param customItem Custom item to add
+	 * @return Copy of the custom item which carries the key, to be handed out to players
+	 */
+	public ItemStack addCustomItem(String key, ItemStack customItem) {
+		return customItems.register(key, customItem);
 	}
 	
 	/**
@@ -53,7 +102,7 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * @return Whether or not the custom item was in the list.
 	 */
 	public boolean removeCustomItem(ItemStack customItem) {
-		return customItems.remove(customItem);
+		return customItems.unregister(customItem);
 	}
 	
 	/**
@@ -66,32 +115,116 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * @return Custom item's ItemStack if there is a match, null if not.
 	 */
 	public ItemStack getCustomItem(String name) {
-		final List<ItemStack> customItemMatches = customItems
-				.stream()
-				.filter(itemStack->itemStack.getItemMeta().getDisplayName().equals(name))
-				.collect(Collectors.toList());
-		return customItemMatches.size() > 0 ? customItemMatches.get(0) : null;
+		return customItems.getByName(name);
+	}
+	
+	/**
+	 * Returns the custom item which was added
+	 * under the specified stable key or null
+	 * if there is no such custom item registered.
+	 * 
+	 * @param key Stable key of the custom item
+	 * @return Custom item's ItemStack if there is a match, null if not.
+	 */
+	public ItemStack getCustomItemByKey(String key) {
+		return customItems.getByKey(key);
+	}
+	
+	/**
+	 * Sets whether saved inventories are stored in the compact
+	 * binary format instead of the string format. Inventories
+	 * of both formats can always be loaded.
+	 * 
+	 * @param compactFormat Whether to store the compact format
+	 */
+	public void setCompactFormat(boolean compactFormat) {
+		this.compactFormat = compactFormat;
+	}
+	
+	/**
+	 * Returns whether saved inventories are stored in
+	 * the compact binary format.
+	 * 
+	 * @return Whether the compact format is stored
+	 */
+	public boolean usesCompactFormat() {
+		return compactFormat;
+	}
+	
+	/**
+	 * Sets whether saved inventories are compressed using
+	 * a dictionary of common item tokens. Compressed and
+	 * uncompressed inventories can always be loaded.
+	 * 
+	 * @param compression Whether to compress saved inventories
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+	
+	/**
+	 * Returns whether saved inventories are compressed.
+	 * 
+	 * @return Whether inventories are compressed
+	 */
+	public boolean usesCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Sets how long saves wait before they are written, during
+	 * which newer saves of the same player in the same world
+	 * replace them. Loads always see the newest save.
+	 * 
+	 * @param coalescingWindow Window in milliseconds, 0 to write every save
+	 */
+	public void setCoalescingWindow(long coalescingWindow) {
+		this.coalescingWindow = coalescingWindow;
+	}
+	
+	/**
+	 * Returns how long saves wait for newer saves of
+	 * the same player to replace them.
+	 * 
+	 * @return Window in milliseconds, 0 if every save is written
+	 */
+	public long getCoalescingWindow() {
+		return coalescingWindow;
+	}
+	
+	/**
+	 * Sets whether the full state of players is saved,
+	 * which besides their inventory includes their ender
+	 * chest, experience, health, food, potion effects and
+	 * selected slot. Saves of either kind can be loaded.
+	 * 
+	 * @param playerState Whether to save the full state of players
+	 */
+	public void setPlayerState(boolean playerState) {
+		this.playerState = playerState;
 	}
 	
 	/**
-	 * Gets the inventory file in a specified plugin namespace
+	 * Getter for whether the full state of players is saved.
+	 * 
+	 * @return Whether the full state of players is saved
+	 */
+	public boolean savesPlayerState() {
+		return playerState;
+	}
+	
+	/**
+	 * Gets the inventory folder in a specified plugin namespace
 	 * from a specified world, in which the serialized player
-	 * inventories are stored.
+	 * inventories are stored in a file per player. The folder
+	 * is created when the first inventory gets written to it.
 	 * 
-	 * @param world Player whose world's inventory file to get
-	 * @param plugin Plugin in which namespace the file should be searched
-	 * @return Player's world's inventory file
+	 * @param world Player whose world's inventory folder to get
+	 * @param plugin Plugin in which namespace the folder should be searched
+	 * @return Player's world's inventory folder
 	 */
-	private File getWorldInventoryFile(World world, JavaPlugin plugin) {
-		final File file = new File(plugin.getDataFolder() + File.separator + world.getName() + ".yml");
-		
-		try {
-			file.createNewFile();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		
-		return file;
+	private File getWorldInventoryFolder(World world, JavaPlugin plugin) {
+		return new File(plugin.getDataFolder() + File.separator + world.getName());
 	}
 	
 	/**
@@ -102,39 +235,387 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * @return Serialized string of the player's inventory
 	 */
 	public String serializeInventory(Inventory inventory) {
-		StringBuilder serialization = new StringBuilder();
-		final ItemStack[] inventoryContents = inventory.getContents();
+		return serializeInventory(inventory.getContents());
+	}
+	
+	/**
+	 * Serializes specified inventory contents
+	 * to a efficiently storable string.
+	 * 
+	 * @param inventoryContents Inventory contents which should be serialized
+	 * @return Serialized string of the inventory contents
+	 */
+	public String serializeInventory(ItemStack[] inventoryContents) {
+		final StringBuilder serialization = serializationBuffer.get();
+		serialization.setLength(0);
 		
-		for (ItemStack item : inventoryContents) {
-			serialization.append(new SavedItem(item).serialize()).append("-");
+		for (int i = 0; i < inventoryContents.length; i++) {
+			if (i > 0) {
+				serialization.append('-');
+			}
+			SavedItem.serialize(inventoryContents[i], serialization);
 		}
 		
-		// Remove end minus sign
-		serialization = new StringBuilder(serialization.substring(0, serialization.length() - 1));
+		final String serializationString = serialization.toString();
 		
-		return serialization.toString();
+		// Don't hold on to exceptionally large buffers
+		if (serialization.capacity() > MAX_BUFFER_CAPACITY) {
+			serializationBuffer.remove();
+		}
+		
+		return serializationString;
 	}
 	
 	/**
-	 * Serializes a player's inventory to a string and saves
-	 * it to a specified world's inventory file in the specified
-	 * plugin's namespace
+	 * Serializes specified inventory contents straight into
+	 * an Appendable, without creating a string per item.
+	 * 
+	 * @param inventoryContents Inventory contents which should be serialized
+	 * @param out Appendable to which the serialization is appended
+	 * @throws IOException If appending fails
+	 */
+	public void serializeInventory(ItemStack[] inventoryContents, Appendable out) throws IOException {
+		for (int i = 0; i < inventoryContents.length; i++) {
+			if (i > 0) {
+				out.append('-');
+			}
+			SavedItem.serialize(inventoryContents[i], out);
+		}
+	}
+	
+	/**
+	 * Serializes a specified inventory to compact binary
+	 * data, using varints and material and enchantment tables.
+	 * 
+	 * @param inventory Inventory which should be serialized
+	 * @return Compact data of the inventory
+	 */
+	public byte[] serializeInventoryCompact(Inventory inventory) {
+		return serializeInventoryCompact(inventory.getContents());
+	}
+	
+	/**
+	 * Serializes specified inventory contents to compact binary
+	 * data, using varints and material and enchantment tables.
+	 * 
+	 * @param inventoryContents Inventory contents which should be serialized
+	 * @return Compact data of the inventory contents
+	 */
+	public byte[] serializeInventoryCompact(ItemStack[] inventoryContents) {
+		return writeCompact(inventoryContents).toByteArray();
+	}
+	
+	/**
+	 * Serializes specified inventory contents to compact
+	 * binary data straight into a buffer, reusing the
+	 * current thread's writer.
+	 * 
+	 * @param inventoryContents Inventory contents which should be serialized
+	 * @param buffer Buffer into which the compact data is put
+	 * @throws java.nio.BufferOverflowException If the buffer is too small
+	 */
+	public void serializeInventoryCompact(ItemStack[] inventoryContents, ByteBuffer buffer) {
+		writeCompact(inventoryContents).writeTo(buffer);
+	}
+	
+	private CompactWriter writeCompact(ItemStack[] inventoryContents) {
+		final CompactWriter writer = CompactWriter.forCurrentThread();
+		writer.writeVarInt(inventoryContents.length);
+		
+		for (final ItemStack item : inventoryContents) {
+			SavedItem.serialize(item, writer);
+		}
+		
+		return writer;
+	}
+	
+	/**
+	 * Serializes a player's state in the format in which
+	 * this inventory saver stores inventories. States which
+	 * only hold inventory contents are stored as inventories.
+	 * 
+	 * @param state The player's state
+	 * @return Serialized string of the player's state
+	 */
+	private String serializeForStorage(PlayerState state) {
+		final long startTime = System.nanoTime();
+		
+		try {
+			return state.isFullState() ? encodePlayerState(state) : encodeForStorage(state.getContents());
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.SERIALIZATION, startTime);
+		}
+	}
+	
+	private String encodePlayerState(PlayerState state) {
+		final CompactWriter writer = CompactWriter.forCurrentThread();
+		state.serialize(writer);
+		final byte[] data = writer.toByteArray();
+		
+		// Player states always use the compact layout, so the format settings only decide on compression
+		if (compression) {
+			return COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(InventoryCompression.compress(InventoryCompression.PLAYER_STATE_FORMAT, data));
+		}
+		
+		return PLAYER_STATE_PREFIX + Base64.getEncoder().encodeToString(data);
+	}
+	
+	private String encodeForStorage(ItemStack[] inventoryContents) {
+		if (compactFormat) {
+			final byte[] data = serializeInventoryCompact(inventoryContents);
+			
+			if (compression) {
+				return COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(InventoryCompression.compress(InventoryCompression.COMPACT_FORMAT, data));
+			}
+			
+			return COMPACT_PREFIX + Base64.getEncoder().encodeToString(data);
+		}
+		
+		// Saved strings carry the version of the string format, so it can change without breaking them
+		final String serialization = ItemStringReader.HEADER + serializeInventory(inventoryContents);
+		
+		if (compression) {
+			return COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(InventoryCompression.compress(InventoryCompression.STRING_FORMAT, serialization.getBytes(StandardCharsets.UTF_8)));
+		}
+		
+		return serialization;
+	}
+	
+	/**
+	 * Copies the contents of an inventory so they can
+	 * safely be serialized off the main thread.
+	 * 
+	 * @param inventory Inventory which contents should be copied
+	 * @return Copy of the inventory contents
+	 */
+	private ItemStack[] snapshotContents(Inventory inventory) {
+		return copyContents(inventory.getContents());
+	}
+	
+	/**
+	 * Snapshots what this inventory saver saves of a
+	 * player, which is their full state or only their
+	 * inventory contents.
+	 * 
+	 * @param player Player whose state should be snapshotted
+	 * @return Snapshot of the player's state
+	 */
+	private PlayerState snapshotState(Player player) {
+		return playerState ? PlayerState.capture(player) : new PlayerState(snapshotContents(player.getInventory()));
+	}
+	
+	/**
+	 * Copies inventory contents, so the copy isn't
+	 * affected by changes to the items.
+	 * 
+	 * @param contents Inventory contents which should be copied
+	 * @return Copy of the inventory contents
+	 */
+	static ItemStack[] copyContents(ItemStack[] contents) {
+		final ItemStack[] snapshot = new ItemStack[contents.length];
+		
+		for (int i = 0; i < contents.length; i++) {
+			snapshot[i] = contents[i] == null ? null : contents[i].clone();
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Snapshots a player's inventory and queues it to be
+	 * serialized on the I/O thread and saved to the player's
+	 * file in a specified world's inventory folder in the specified
+	 * plugin's namespace on the next flush of the world inventory cache.
+	 * Within the coalescing window, only the newest save of the player
+	 * is serialized.
 	 * @param player Player whose inventory is to be saved
 	 * @param world The world to which inventory file the inventory should be saved.
 	 * @param plugin Plugin in which namespace the inventory file should go.
+	 * @return Future which completes once the inventory has been written
 	 */
-	protected void saveInventory(Player player, World world, JavaPlugin plugin) {
+	protected CompletableFuture<Void> saveInventory(Player player, World world, JavaPlugin plugin) {
+		final long startTime = System.nanoTime();
+		
+		try {
+			return queueSave(player, world, plugin);
+		} finally {
+			// Only the time spent on the calling thread, serializing and writing are recorded separately
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.SAVE, startTime);
+		}
+	}
+	
+	private CompletableFuture<Void> queueSave(Player player, World world, JavaPlugin plugin) {
 		if (world == null) {
 			world = player.getWorld();
 		}
-		final File file = getWorldInventoryFile(world, plugin);
-		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+		final File folder = getWorldInventoryFolder(world, plugin);
+		final UUID uuid = player.getUniqueId();
+		final File file = WorldInventoryCache.getPlayerFile(folder, uuid);
+		final String playerName = player.getName();
+		final PlayerState state = snapshotState(player);
+		// A prefetched inventory would be outdated by this save
+		prefetchedInventories.remove(file);
 		
-		configuration.set(player.getName(), serializeInventory(player.getInventory()));
-		try {
-			configuration.save(file);
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (coalescingWindow > 0) {
+			return coalesceSave(file, folder, uuid, playerName, state);
+		}
+		
+		return queueReplacingSave(Collections.singletonList(file), () -> InventoryWriter.getInstance()
+				.supply(file, () -> WorldInventoryCache.getInstance().put(folder, uuid, playerName, serializeForStorage(state)))
+				.thenCompose(Function.identity()));
+	}
+	
+	/**
+	 * Queues a save which replaces the saves of players
+	 * which are waiting out the coalescing window. The
+	 * replaced saves only leave the window once the new
+	 * save is queued, so loads in between find either of
+	 * them and never read the stored inventory.
+	 * 
+	 * @param files The inventory files of the players
+	 * @param queue Queues the new save
+	 * @return Future of the new save, which the replaced saves complete along with
+	 */
+	private static CompletableFuture<Void> queueReplacingSave(List<File> files, Supplier<CompletableFuture<Void>> queue) {
+		final List<CoalescedSave> replacedSaves = new ArrayList<>();
+		final CompletableFuture<Void> save;
+		
+		synchronized (coalescedSaves) {
+			save = queue.get();
+			
+			for (final File file : files) {
+				final CoalescedSave replacedSave = takeCoalescedSave(file);
+				
+				if (replacedSave != null) {
+					replacedSaves.add(replacedSave);
+				}
+			}
+		}
+		
+		for (final CoalescedSave replacedSave : replacedSaves) {
+			replacedSave.completeWith(save);
+		}
+		
+		return save;
+	}
+	
+	/**
+	 * Replaces a player's save which is waiting out the
+	 * coalescing window, or starts a new window if there
+	 * is none.
+	 * 
+	 * @param file The player's inventory file
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @param name Name of the player
+	 * @param state Snapshot of the player's state
+	 * @return Future which completes once the newest save in the window has been written
+	 */
+	private CompletableFuture<Void> coalesceSave(File file, File folder, UUID uuid, String name, PlayerState state) {
+		synchronized (coalescedSaves) {
+			final CoalescedSave coalescedSave = coalescedSaves.get(file);
+			
+			if (coalescedSave != null) {
+				InventoryMetrics.getInstance().increment(InventoryMetrics.Counter.COALESCED_SAVES);
+				coalescedSave.inventorySaver = this;
+				coalescedSave.name = name;
+				coalescedSave.state = state;
+				return coalescedSave.written;
+			}
+			
+			final CoalescedSave newSave = new CoalescedSave(this, folder, uuid, name, state);
+			coalescedSaves.put(file, newSave);
+			CompletableFuture.delayedExecutor(coalescingWindow, TimeUnit.MILLISECONDS).execute(() -> writeCoalescedSave(file, newSave));
+			
+			return newSave.written;
+		}
+	}
+	
+	/**
+	 * Queues a coalesced save to be serialized on the I/O
+	 * thread. It stays replaceable until it is serialized,
+	 * and loads wait for it from then on.
+	 * 
+	 * @param file The player's inventory file
+	 * @param coalescedSave The coalesced save
+	 */
+	private static void writeCoalescedSave(File file, CoalescedSave coalescedSave) {
+		synchronized (coalescedSaves) {
+			if (coalescedSave.writing) {
+				return;
+			}
+			coalescedSave.writing = true;
+		}
+		
+		// Queued before the save leaves the window, so loads never miss it
+		final CompletableFuture<Void> save = InventoryWriter.getInstance().supply(file, () -> {
+			synchronized (coalescedSaves) {
+				coalescedSaves.remove(file, coalescedSave);
+			}
+			
+			return WorldInventoryCache.getInstance().put(coalescedSave.folder, coalescedSave.uuid, coalescedSave.name, coalescedSave.inventorySaver.serializeForStorage(coalescedSave.state));
+		}).thenCompose(Function.identity());
+		
+		coalescedSave.completeWith(save);
+	}
+	
+	/**
+	 * Takes a player's save out of the coalescing window
+	 * because a newer save replaces it. Should be called
+	 * while holding the coalesced saves.
+	 * 
+	 * @param file The player's inventory file
+	 * @return The replaced save, which completes along with the newer save, or null if there is none
+	 */
+	private static CoalescedSave takeCoalescedSave(File file) {
+		synchronized (coalescedSaves) {
+			final CoalescedSave coalescedSave = coalescedSaves.remove(file);
+			
+			// Saves which are already queued complete by themselves
+			if (coalescedSave == null || coalescedSave.writing) {
+				return null;
+			}
+			coalescedSave.writing = true;
+			
+			return coalescedSave;
+		}
+	}
+	
+	/**
+	 * Returns a copy of a player's newest save which is
+	 * still waiting out the coalescing window.
+	 * 
+	 * @param file The player's inventory file
+	 * @return The saved state, or null if there is no such save
+	 */
+	private static PlayerState getCoalescedState(File file) {
+		final PlayerState state;
+		
+		synchronized (coalescedSaves) {
+			final CoalescedSave coalescedSave = coalescedSaves.get(file);
+			
+			if (coalescedSave == null) {
+				return null;
+			}
+			state = coalescedSave.state;
+		}
+		
+		return state.copy();
+	}
+	
+	/**
+	 * Queues all saves which are waiting out the
+	 * coalescing window to be written right away.
+	 */
+	public static void flushCoalescedSaves() {
+		final Map<File,CoalescedSave> saves;
+		
+		synchronized (coalescedSaves) {
+			saves = new HashMap<>(coalescedSaves);
+		}
+		
+		for (final Map.Entry<File,CoalescedSave> entry : saves.entrySet()) {
+			writeCoalescedSave(entry.getKey(), entry.getValue());
 		}
 	}
 	
@@ -144,9 +625,10 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * plugin's namespace
 	 * @param player Player whose inventory should be saved.
 	 * @param plugin Plugin in which namespace the inventory should be saved.
+	 * @return Future which completes once the inventory has been written
 	 */
-	protected void saveInventory(Player player, JavaPlugin plugin) {
-		saveInventory(player, player.getWorld(), plugin);
+	protected CompletableFuture<Void> saveInventory(Player player, JavaPlugin plugin) {
+		return saveInventory(player, player.getWorld(), plugin);
 	}
 	
 	/**
@@ -155,9 +637,10 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * 
 	 * @param player Player whose inventory is to be saved
 	 * @param world World to which inventory file the player's inventory should be saved.
+	 * @return Future which completes once the inventory has been written
 	 */
-	public void saveInventory(Player player, World world) {
-		saveInventory(player, world, Main.instance);
+	public CompletableFuture<Void> saveInventory(Player player, World world) {
+		return saveInventory(player, world, Main.instance);
 	}
 	
 	/**
@@ -165,30 +648,204 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * it to the player's world's inventory file
 	 * 
 	 * @param player Player whose inventory to save.
+	 * @return Future which completes once the inventory has been written
+	 */
+	public CompletableFuture<Void> saveInventory(Player player) {
+		return saveInventory(player, player.getWorld());
+	}
+	
+	/**
+	 * Snapshots the inventories of multiple players and queues
+	 * them to be saved to the inventory folders of their current
+	 * worlds in the specified plugin's namespace. Players are
+	 * grouped by world, so every world is serialized in a single
+	 * task and all of them are written in a single flush.
+	 * 
+	 * @param players Players whose inventories are to be saved
+	 * @param plugin Plugin in which namespace the inventory files should go.
+	 * @return Future which completes once all inventories have been written
+	 */
+	protected CompletableFuture<Void> saveInventories(Collection<? extends Player> players, JavaPlugin plugin) {
+		final Map<File,List<InventorySnapshot>> snapshotsByFolder = new HashMap<>();
+		
+		for (final Player player : players) {
+			final File folder = getWorldInventoryFolder(player.getWorld(), plugin);
+			snapshotsByFolder.computeIfAbsent(folder, key -> new ArrayList<>()).add(new InventorySnapshot(player, snapshotState(player)));
+		}
+		
+		final List<CompletableFuture<Void>> saves = new ArrayList<>();
+		
+		for (final Map.Entry<File,List<InventorySnapshot>> entry : snapshotsByFolder.entrySet()) {
+			final File folder = entry.getKey();
+			final List<InventorySnapshot> snapshots = entry.getValue();
+			final List<File> files = new ArrayList<>(snapshots.size());
+			
+			for (final InventorySnapshot snapshot : snapshots) {
+				final File file = WorldInventoryCache.getPlayerFile(folder, snapshot.uuid);
+				prefetchedInventories.remove(file);
+				files.add(file);
+			}
+			
+			saves.add(queueReplacingSave(files, () -> InventoryWriter.getInstance().supply(files, () -> {
+				final List<CompletableFuture<Void>> puts = new ArrayList<>(snapshots.size());
+				
+				for (final InventorySnapshot snapshot : snapshots) {
+					puts.add(WorldInventoryCache.getInstance().put(folder, snapshot.uuid, snapshot.name, serializeForStorage(snapshot.state)));
+				}
+				
+				return CompletableFuture.allOf(puts.toArray(new CompletableFuture[0]));
+			}).thenCompose(Function.identity())));
+		}
+		
+		// Queued after all worlds, so each of them is written once
+		WorldInventoryCache.getInstance().flush();
+		
+		return CompletableFuture.allOf(saves.toArray(new CompletableFuture[0]));
+	}
+	
+	/**
+	 * Saves the inventories of multiple players to the
+	 * inventory files of their current worlds at once
+	 * 
+	 * @param players Players whose inventories are to be saved
+	 * @return Future which completes once all inventories have been written
 	 */
-	public void saveInventory(Player player) {
-		saveInventory(player, player.getWorld());
+	public CompletableFuture<Void> saveInventories(Collection<? extends Player> players) {
+		return saveInventories(players, Main.instance);
 	}
 	
 	/**
 	 * Deserializes a serialization string
 	 * to an ItemStack array containing the
-	 * inventory contents.
+	 * inventory contents. The string format,
+	 * the Base64 encoded compact format, player
+	 * states and compressed data of any of them
+	 * are detected.
 	 * 
 	 * @param serialization The serialization string
 	 * @return ItemStack array with inventory contents
 	 */
 	public ItemStack[] deserializeInventory(String serialization) {
-		final String[] serializedItems = serialization.split("-");
-		final ItemStack[] inventoryContents = new ItemStack[serializedItems.length];
+		final long startTime = System.nanoTime();
+		
+		try {
+			return decodeInventory(serialization);
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.DESERIALIZATION, startTime);
+		}
+	}
+	
+	private ItemStack[] decodeInventory(String serialization) {
+		if (serialization.startsWith(COMPACT_PREFIX)) {
+			return decodeInventory(Base64.getDecoder().decode(serialization.substring(COMPACT_PREFIX.length())));
+		}
+		
+		if (serialization.startsWith(COMPRESSED_PREFIX) || serialization.startsWith(PLAYER_STATE_PREFIX)) {
+			return decodeState(serialization).getContents();
+		}
+		
+		final ItemStringReader reader = new ItemStringReader(serialization);
+		
+		if (reader.getVersion() > ItemStringReader.VERSION) {
+			throw new IllegalArgumentException(String.format("Inventory was saved in version %d of the string format, which is newer than this plugin", reader.getVersion()));
+		}
+		
+		ItemStack[] inventoryContents = new ItemStack[DEFAULT_INVENTORY_SIZE];
+		int size = 0;
+		
+		do {
+			if (size == inventoryContents.length) {
+				inventoryContents = Arrays.copyOf(inventoryContents, size * 2);
+			}
+			inventoryContents[size++] = SavedItem.deserialize(reader, this);
+		} while (reader.skipItemSeparator());
+		
+		return size == inventoryContents.length ? inventoryContents : Arrays.copyOf(inventoryContents, size);
+	}
+	
+	/**
+	 * Deserializes compact binary data to an
+	 * ItemStack array containing the inventory
+	 * contents.
+	 * 
+	 * @param data The compact data
+	 * @return ItemStack array with inventory contents
+	 */
+	public ItemStack[] deserializeInventory(byte[] data) {
+		final long startTime = System.nanoTime();
 		
-		for (int i = 0; i < serializedItems.length; i++) {
-			inventoryContents[i] = SavedItem.deserialize(serializedItems[i], this);
+		try {
+			return decodeInventory(data);
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.DESERIALIZATION, startTime);
+		}
+	}
+	
+	private ItemStack[] decodeInventory(byte[] data) {
+		final CompactReader reader = new CompactReader(data);
+		final ItemStack[] inventoryContents = new ItemStack[reader.readVarInt()];
+		
+		for (int i = 0; i < inventoryContents.length; i++) {
+			inventoryContents[i] = SavedItem.deserialize(reader, this);
 		}
 		
 		return inventoryContents;
 	}
 	
+	/**
+	 * Deserializes a serialization string to the
+	 * state of a player. Serializations which only
+	 * hold an inventory, in any format, result in a
+	 * state with only the inventory contents.
+	 * 
+	 * @param serialization The serialization string
+	 * @return The player's state
+	 */
+	public PlayerState deserializePlayerState(String serialization) {
+		final long startTime = System.nanoTime();
+		
+		try {
+			return decodeState(serialization);
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.DESERIALIZATION, startTime);
+		}
+	}
+	
+	private PlayerState decodeState(String serialization) {
+		if (serialization.startsWith(PLAYER_STATE_PREFIX)) {
+			return PlayerState.deserialize(new CompactReader(Base64.getDecoder().decode(serialization.substring(PLAYER_STATE_PREFIX.length()))), this);
+		}
+		
+		if (serialization.startsWith(COMPRESSED_PREFIX)) {
+			final byte[] compressedData = Base64.getDecoder().decode(serialization.substring(COMPRESSED_PREFIX.length()));
+			final byte[] data = InventoryCompression.decompress(compressedData);
+			
+			switch (InventoryCompression.getFormat(compressedData)) {
+				case InventoryCompression.PLAYER_STATE_FORMAT:
+					return PlayerState.deserialize(new CompactReader(data), this);
+				case InventoryCompression.COMPACT_FORMAT:
+					return new PlayerState(decodeInventory(data));
+				default:
+					return new PlayerState(decodeInventory(new String(data, StandardCharsets.UTF_8)));
+			}
+		}
+		
+		return new PlayerState(decodeInventory(serialization));
+	}
+	
+	/**
+	 * Converts a serialization string of any format and
+	 * version to the format in which this inventory saver
+	 * stores inventories, in the current version.
+	 * 
+	 * @param serialization The serialization string
+	 * @return The converted serialization string
+	 * @throws IllegalArgumentException If the serialization can't be read
+	 */
+	public String convertSerialization(String serialization) {
+		return serializeForStorage(decodeState(serialization));
+	}
+	
 	/**
 	 * Loads the serialized inventory of a specified world's
 	 * inventory file saved in a specified plugin's namespace
@@ -200,10 +857,28 @@ public class InventorySaver implements Listener,CommandExecutor {
 	 * @return ItemStack array with the loaded inventory contents.
 	 */
 	protected ItemStack[] loadInventoryContents(Player player, World world, JavaPlugin plugin) {
-		final File file = getWorldInventoryFile(world, plugin);
-		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+		final long startTime = System.nanoTime();
+		
+		try {
+			return loadContents(player, world, plugin);
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.LOAD, startTime);
+		}
+	}
+	
+	private ItemStack[] loadContents(Player player, World world, JavaPlugin plugin) {
+		final File folder = getWorldInventoryFolder(world, plugin);
+		final File file = WorldInventoryCache.getPlayerFile(folder, player.getUniqueId());
+		final PlayerState coalescedState = getCoalescedState(file);
+		
+		if (coalescedState != null) {
+			return coalescedState.getContents();
+		}
+		
+		// Make sure saves which are still being serialized are read back
+		InventoryWriter.getInstance().awaitPending(file);
 		
-		return deserializeInventory(configuration.getString(player.getName()));
+		return deserializeInventory(WorldInventoryCache.getInstance().get(folder, player.getUniqueId()));
 	}
 	
 	/**
@@ -244,6 +919,176 @@ public class InventorySaver implements Listener,CommandExecutor {
 		return loadInventoryContents(player, player.getWorld());
 	}
 	
+	/**
+	 * Loads the saved state of a player in a specified
+	 * world's inventory folder in a specified plugin's
+	 * namespace. Saves which only hold an inventory
+	 * result in a state with only the inventory contents.
+	 * 
+	 * @param player Player whose saved state is to be loaded.
+	 * @param world The world from which inventory folder the state should be loaded.
+	 * @param plugin Plugin in which namespace the inventory folder is.
+	 * @return The loaded state, or null if none is saved
+	 */
+	protected PlayerState loadPlayerState(Player player, World world, JavaPlugin plugin) {
+		final long startTime = System.nanoTime();
+		final File folder = getWorldInventoryFolder(world, plugin);
+		
+		try {
+			InventoryWriter.getInstance().awaitPending(WorldInventoryCache.getPlayerFile(folder, player.getUniqueId()));
+			return loadSavedState(folder, player.getUniqueId());
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.LOAD, startTime);
+		}
+	}
+	
+	/**
+	 * Loads the saved state of a player in a specified
+	 * world's inventory folder in the InventorySaver
+	 * plugin's namespace.
+	 * 
+	 * @param player Player whose saved state is to be loaded
+	 * @param world The world from which inventory folder the state should be loaded.
+	 * @return The loaded state, or null if none is saved
+	 */
+	public PlayerState loadPlayerState(Player player, World world) {
+		return loadPlayerState(player, world, Main.instance);
+	}
+	
+	/**
+	 * Starts loading and deserializing a player's saved
+	 * inventory of a specified world in the background, so
+	 * it can be applied without any I/O on teleport. The
+	 * load runs on the I/O thread after all saves which
+	 * have been queued before it.
+	 * 
+	 * @param player Player whose saved inventory is to be loaded
+	 * @param world The world from which inventory file the inventory should be loaded.
+	 * @param plugin Plugin in which namespace the inventory file is saved.
+	 * @return Future with the inventory contents, or null if none are saved
+	 */
+	protected CompletableFuture<ItemStack[]> prefetchInventory(Player player, World world, JavaPlugin plugin) {
+		return prefetchState(player, world, plugin).thenApply(state -> state == null ? null : state.getContents());
+	}
+	
+	/**
+	 * Starts loading and deserializing a player's saved
+	 * state of a specified world in the background.
+	 * 
+	 * @param player Player whose saved state is to be loaded
+	 * @param world The world from which inventory folder the state should be loaded.
+	 * @param plugin Plugin in which namespace the inventory folder is.
+	 * @return Future with the state, or null if none is saved
+	 */
+	private CompletableFuture<PlayerState> prefetchState(Player player, World world, JavaPlugin plugin) {
+		final File folder = getWorldInventoryFolder(world, plugin);
+		final UUID uuid = player.getUniqueId();
+		final File file = WorldInventoryCache.getPlayerFile(folder, uuid);
+		final PrefetchedInventory prefetched = prefetchedInventories.get(file);
+		
+		if (prefetched != null && prefetched.inventorySaver == this) {
+			return prefetched.state;
+		}
+		
+		final CompletableFuture<PlayerState> state = InventoryWriter.getInstance().supply((File)null, () -> loadSavedState(folder, uuid));
+		prefetchedInventories.put(file, new PrefetchedInventory(this, state));
+		
+		return state;
+	}
+	
+	/**
+	 * Starts loading a player's saved inventory of a
+	 * specified world in the background. Plugins which
+	 * teleport players with a delay can call this when
+	 * the teleport is requested.
+	 * 
+	 * @param player Player whose saved inventory is to be loaded
+	 * @param world The world from which inventory file the inventory should be loaded.
+	 * @return Future with the inventory contents, or null if none are saved
+	 */
+	public CompletableFuture<ItemStack[]> prefetchInventory(Player player, World world) {
+		return prefetchInventory(player, world, Main.instance);
+	}
+	
+	/**
+	 * Starts loading a player's saved inventories of all
+	 * controlled worlds except the one they're in.
+	 * 
+	 * @param player Player whose saved inventories are to be loaded
+	 * @param plugin Plugin in which namespace the inventory files are saved.
+	 */
+	protected void prefetchInventories(Player player, JavaPlugin plugin) {
+		for (final World world : ControlledWorlds.getWorlds()) {
+			if (!world.equals(player.getWorld())) {
+				prefetchState(player, world, plugin);
+			}
+		}
+	}
+	
+	/**
+	 * Returns a player's prefetched state of a specified
+	 * world, or loads it right away if it wasn't prefetched
+	 * or the prefetch hasn't finished yet.
+	 * 
+	 * @param player Player whose saved state is to be loaded
+	 * @param world The world from which inventory folder the state should be loaded.
+	 * @param plugin Plugin in which namespace the inventory folder is.
+	 * @return The state, or null if none is saved
+	 */
+	protected PlayerState takePrefetchedState(Player player, World world, JavaPlugin plugin) {
+		final long startTime = System.nanoTime();
+		
+		try {
+			return takePrefetched(player, world, plugin);
+		} finally {
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.LOAD, startTime);
+		}
+	}
+	
+	private PlayerState takePrefetched(Player player, World world, JavaPlugin plugin) {
+		final File folder = getWorldInventoryFolder(world, plugin);
+		final UUID uuid = player.getUniqueId();
+		final File file = WorldInventoryCache.getPlayerFile(folder, uuid);
+		final PrefetchedInventory prefetched = prefetchedInventories.remove(file);
+		
+		// Inventories prefetched by another instance may have different custom items, and
+		// prefetches which are still queued behind other I/O would block the teleport
+		if (prefetched != null && prefetched.inventorySaver == this && prefetched.state.isDone()) {
+			try {
+				return prefetched.state.join();
+			} catch (CompletionException e) {
+				// Already reported on the I/O thread, trying once more below
+			}
+		}
+		
+		InventoryWriter.getInstance().awaitPending(file);
+		return loadSavedState(folder, uuid);
+	}
+	
+	/**
+	 * Drops all of a player's prefetched inventories.
+	 * 
+	 * @param player Player whose prefetched inventories are to be dropped
+	 * @param plugin Plugin in which namespace the inventory files are saved.
+	 */
+	protected void discardPrefetchedInventories(Player player, JavaPlugin plugin) {
+		for (final World world : ControlledWorlds.getWorlds()) {
+			prefetchedInventories.remove(WorldInventoryCache.getPlayerFile(getWorldInventoryFolder(world, plugin), player.getUniqueId()));
+		}
+	}
+	
+	private PlayerState loadSavedState(File folder, UUID uuid) {
+		final PlayerState coalescedState = getCoalescedState(WorldInventoryCache.getPlayerFile(folder, uuid));
+		
+		if (coalescedState != null) {
+			return coalescedState;
+		}
+		
+		final String serialization = WorldInventoryCache.getInstance().get(folder, uuid);
+		
+		return serialization == null ? null : deserializePlayerState(serialization);
+	}
+	
 	/**
 	 * Sets the default inventory saver
 	 * which loads/saves inventories
@@ -270,9 +1115,19 @@ public class InventorySaver implements Listener,CommandExecutor {
 		setDefaultInventorySaver(inventorySaver, Main.instance);
 	}
 
+	protected void onJoin(PlayerJoinEvent event, Main plugin) {
+		final Player player = event.getPlayer();
+		joinTimes.put(player.getUniqueId(), System.currentTimeMillis());
+		// The player's UUID is only known for sure once they join
+		LegacyInventoryMigrator.migrate(player);
+		
+		// Have the inventories of controlled worlds ready before the player teleports there
+		plugin.getDefaultInventorySaver().prefetchInventories(player, plugin);
+	}
+	
 	@EventHandler
 	public void onJoin(PlayerJoinEvent event) {
-		joinTimes.put(event.getPlayer().getUniqueId(), System.currentTimeMillis());
+		onJoin(event, Main.instance);
 	}
 	
 	protected void onTeleport(PlayerTeleportEvent event, Main plugin) {
@@ -281,23 +1136,31 @@ public class InventorySaver implements Listener,CommandExecutor {
 		final long joinTime = joinTimes.getOrDefault(player.getUniqueId(), 0l);
 		final World from = event.getFrom().getWorld();
 		final World to = event.getTo().getWorld();
-
-		System.out.println(System.currentTimeMillis() - joinTime);
+		
 		// Don't load or save inventories if players get teleported within 50ms from join
 		if ((System.currentTimeMillis() - joinTime) < 50) {
 			return;
 		}
 		
+		final boolean fromControlled = ControlledWorlds.isControlled(from);
+		final boolean toControlled = ControlledWorlds.isControlled(to);
+		
 		// From a controlled world to an uncontrolled world
-		if (ControlledWorlds.getWorlds().contains(from) && !ControlledWorlds.getWorlds().contains(to)) {
+		if (fromControlled && !toControlled) {
 			saveInventory(player, plugin);
+			// Decoding the saved inventory again in case the player returns
+			plugin.getDefaultInventorySaver().prefetchState(player, from, plugin);
 			return;
 		}
 		
 		// From an uncontrolled world to a controlled world
-		if (!ControlledWorlds.getWorlds().contains(from) && ControlledWorlds.getWorlds().contains(to)) {
-			final ItemStack[] contents = plugin.getDefaultInventorySaver().loadInventoryContents(player, to);
-			player.getInventory().setContents(contents);
+		if (!fromControlled && toControlled) {
+			final PlayerState state = plugin.getDefaultInventorySaver().takePrefetchedState(player, to, plugin);
+			
+			// Players keep their inventory when they enter a world for the first time
+			if (state != null) {
+				state.applyTo(player);
+			}
 		}
 	}
 	
@@ -307,9 +1170,12 @@ public class InventorySaver implements Listener,CommandExecutor {
 	}
 	
 	protected void onQuit(PlayerQuitEvent event, JavaPlugin plugin) {
-		if (ControlledWorlds.getWorlds().contains(event.getPlayer().getWorld())) {
+		if (ControlledWorlds.isControlled(event.getPlayer().getWorld())) {
 			Main.instance.getDefaultInventorySaver().saveInventory(event.getPlayer(), plugin);
 		}
+		
+		discardPrefetchedInventories(event.getPlayer(), plugin);
+		joinTimes.remove(event.getPlayer().getUniqueId());
 	}
 	
 	@EventHandler
@@ -322,6 +1188,43 @@ public class InventorySaver implements Listener,CommandExecutor {
 			return false;
 		}
 		
+		// Saving all inventories doesn't need a player
+		if (args.length == 1 && args[0].equals("saveall")) {
+			if (!sender.hasPermission("inventorysaver.saveall")) {
+				sender.sendMessage(ChatColor.RED + "You don't have permission to save all inventories.");
+				return true;
+			}
+			
+			final int savedPlayers = Main.instance.saveAllInventories();
+			sender.sendMessage(String.format("Saving the inventories of %d players.", savedPlayers));
+			return true;
+		}
+		
+		if (args.length == 1 && args[0].equals("stats")) {
+			if (!sender.hasPermission("inventorysaver.stats")) {
+				sender.sendMessage(ChatColor.RED + "You don't have permission to view the statistics.");
+				return true;
+			}
+			
+			sendStatistics(sender);
+			return true;
+		}
+		
+		if ((args.length == 1 || args.length == 2) && args[0].equals("migrate")) {
+			if (!sender.hasPermission("inventorysaver.migrate")) {
+				sender.sendMessage(ChatColor.RED + "You don't have permission to migrate the saved inventories.");
+				return true;
+			}
+			
+			try {
+				final int migratingWorlds = Main.instance.migrateInventories(args.length == 2 ? args[1] : null);
+				sender.sendMessage(String.format("Migrating the inventories of %d worlds, the progress is logged to the console.", migratingWorlds));
+			} catch (IllegalStateException e) {
+				sender.sendMessage(ChatColor.RED + e.getMessage());
+			}
+			return true;
+		}
+		
 		if (!(sender instanceof Player)) {
 			sender.sendMessage(ChatColor.RED + "This command is to be executed by players.");
 			return false;
@@ -339,13 +1242,86 @@ public class InventorySaver implements Listener,CommandExecutor {
 				saveInventory(player);
 				break;
 			case "load":
-				player.getInventory().setContents(loadInventoryContents(player));
+				final PlayerState state = loadPlayerState(player, player.getWorld());
+				
+				if (state != null) {
+					state.applyTo(player);
+				}
 				break;
 		}
 		
 		return true;
 	}
 	
+	/*
+	 * Sends the latencies and counters which have been
+	 * recorded since the plugin was enabled.
+	 */
+	private static void sendStatistics(CommandSender sender) {
+		final InventoryMetrics metrics = InventoryMetrics.getInstance();
+		
+		sender.sendMessage(String.format("Saves: %s", metrics.getSaveLatency()));
+		sender.sendMessage(String.format("Loads: %s", metrics.getLoadLatency()));
+		sender.sendMessage(String.format("Serializations: %s", metrics.getSerializationLatency()));
+		sender.sendMessage(String.format("Deserializations: %s", metrics.getDeserializationLatency()));
+		sender.sendMessage(String.format("Storage reads: %s", metrics.getStorageReadLatency()));
+		sender.sendMessage(String.format("Storage writes: %s", metrics.getStorageWriteLatency()));
+		sender.sendMessage(String.format("Cache hits: %d, misses: %d", metrics.getCacheHits(), metrics.getCacheMisses()));
+		sender.sendMessage(String.format("Coalesced saves: %d, bytes written: %d, queued tasks: %d", metrics.getCoalescedSaves(), metrics.getBytesWritten(), metrics.getQueueDepth()));
+	}
+	
+	private static class InventorySnapshot {
+		private final UUID uuid;
+		private final String name;
+		private final PlayerState state;
+		
+		private InventorySnapshot(Player player, PlayerState state) {
+			this.uuid = player.getUniqueId();
+			this.name = player.getName();
+			this.state = state;
+		}
+	}
+	
+	private static class CoalescedSave {
+		private final File folder;
+		private final UUID uuid;
+		private final CompletableFuture<Void> written;
+		// Replaced while the save is in the window, guarded by the coalesced saves
+		private InventorySaver inventorySaver;
+		private String name;
+		private PlayerState state;
+		private boolean writing;
+		
+		private CoalescedSave(InventorySaver inventorySaver, File folder, UUID uuid, String name, PlayerState state) {
+			this.inventorySaver = inventorySaver;
+			this.folder = folder;
+			this.uuid = uuid;
+			this.name = name;
+			this.state = state;
+			this.written = new CompletableFuture<>();
+		}
+		
+		private void completeWith(CompletableFuture<Void> save) {
+			save.whenComplete((result, exception) -> {
+				if (exception != null) {
+					written.completeExceptionally(exception);
+				} else {
+					written.complete(null);
+				}
+			});
+		}
+	}
+	
+	private static class PrefetchedInventory {
+		private final InventorySaver inventorySaver;
+		private final CompletableFuture<PlayerState> state;
+		
+		private PrefetchedInventory(InventorySaver inventorySaver, CompletableFuture<PlayerState> state) {
+			this.inventorySaver = inventorySaver;
+			this.state = state;
+		}
+	}
+	
 	@Override
 	public boolean equals(Object other) {
 		if (this == other) {
@@ -0,0 +1,59 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+public interface InventoryStorage {
+	/**
+	 * Loads a player's saved inventory in a world.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @return The saved inventory, or null if there is none
+	 * @throws IOException If the inventory could not be read
+	 */
+	StoredInventory load(File folder, UUID uuid) throws IOException;
+	
+	/**
+	 * Saves the inventories of multiple players in a world
+	 * at once. Called on the I/O thread.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param inventories The inventories to save
+	 * @throws IOException If the inventories could not be written
+	 */
+	void save(File folder, Collection<StoredInventory> inventories) throws IOException;
+	
+	/**
+	 * Brings saves which have only been written in a
+	 * temporary form into their final form. Called on
+	 * the I/O thread.
+	 * 
+	 * @throws IOException If the saves could not be compacted
+	 */
+	default void compact() throws IOException {
+	}
+	
+	/**
+	 * Recovers saves which were left behind in a temporary
+	 * form when the server stopped or crashed.
+	 * 
+	 * @param dataFolder Folder in which the world inventory folders are stored
+	 * @return The amount of worlds which saves were recovered
+	 * @throws IOException If the saves could not be recovered
+	 */
+	default int recover(File dataFolder) throws IOException {
+		return 0;
+	}
+	
+	/**
+	 * Releases the resources held by the storage
+	 * once it isn't used anymore.
+	 * 
+	 * @throws IOException If the storage could not be closed
+	 */
+	default void close() throws IOException {
+	}
+}
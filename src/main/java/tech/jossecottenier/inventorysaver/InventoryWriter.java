@@ -0,0 +1,186 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class InventoryWriter {
+	private static InventoryWriter instance;
+	
+	private final ExecutorService executor;
+	private final Map<File,CompletableFuture<?>> pendingWrites;
+	private final AtomicInteger queueDepth;
+	
+	public InventoryWriter() {
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "InventorySaver I/O");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.pendingWrites = new ConcurrentHashMap<>();
+		this.queueDepth = new AtomicInteger();
+	}
+	
+	/**
+	 * Getter for the shared writer on which all inventory
+	 * files are written. A new writer is created if the
+	 * previous one has been shut down.
+	 * 
+	 * @return The shared inventory writer
+	 */
+	public static synchronized InventoryWriter getInstance() {
+		if (instance == null) {
+			instance = new InventoryWriter();
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Returns the amount of unfinished tasks of the shared
+	 * writer, without creating a writer if there is none.
+	 * 
+	 * @return The amount of unfinished tasks, 0 if there is no shared writer
+	 */
+	public static synchronized int getInstanceQueueDepth() {
+		return instance == null ? 0 : instance.getQueueDepth();
+	}
+	
+	/**
+	 * Flushes and shuts down the shared writer, if
+	 * there is one.
+	 */
+	protected static synchronized void shutdownInstance() {
+		if (instance != null) {
+			instance.shutdown();
+			instance = null;
+		}
+	}
+	
+	/**
+	 * Queues a write to a specified file on the I/O thread.
+	 * Writes are executed in the order they were submitted.
+	 * 
+	 * @param file File which is written by the task
+	 * @param write Task which writes the file
+	 * @return Future which completes once the write has finished
+	 */
+	public CompletableFuture<Void> submit(File file, Runnable write) {
+		return supply(file, () -> {
+			write.run();
+			return null;
+		});
+	}
+	
+	/**
+	 * Queues a task involving a specified file on the I/O
+	 * thread and returns its result. Tasks are executed in
+	 * the order they were submitted.
+	 * 
+	 * @param file File which is used by the task, or null if it isn't bound to one file
+	 * @param task Task which uses the file
+	 * @return Future which completes with the task's result
+	 */
+	public <T> CompletableFuture<T> supply(File file, Supplier<T> task) {
+		return supply(file == null ? Collections.emptyList() : Collections.singletonList(file), task);
+	}
+	
+	/**
+	 * Queues a task involving multiple files on the I/O
+	 * thread and returns its result. Loads of any of the
+	 * files wait for the task to finish. Can be called
+	 * from any thread.
+	 * 
+	 * @param files Files which are used by the task
+	 * @param task Task which uses the files
+	 * @return Future which completes with the task's result
+	 */
+	public <T> CompletableFuture<T> supply(Collection<File> files, Supplier<T> task) {
+		final CompletableFuture<T> future;
+		
+		// Queuing and registering in one step, so the registered task of a file is always the last one queued
+		synchronized (pendingWrites) {
+			queueDepth.incrementAndGet();
+			future = CompletableFuture.supplyAsync(task, executor);
+			
+			for (final File file : files) {
+				pendingWrites.put(file, future);
+			}
+		}
+		
+		future.whenComplete((result, exception) -> {
+			queueDepth.decrementAndGet();
+			
+			for (final File file : files) {
+				pendingWrites.remove(file, future);
+			}
+			
+			if (exception != null) {
+				exception.printStackTrace();
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * Returns the amount of tasks which have been queued
+	 * on the I/O thread and haven't finished yet.
+	 * 
+	 * @return The amount of unfinished tasks
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+	
+	/**
+	 * Blocks until all writes queued for a specified
+	 * file have finished.
+	 * 
+	 * @param file File which pending writes to wait for
+	 */
+	public void awaitPending(File file) {
+		final CompletableFuture<?> pendingWrite = pendingWrites.get(file);
+		
+		if (pendingWrite != null) {
+			// Failures are already reported by the write itself
+			pendingWrite.exceptionally(exception -> null).join();
+		}
+	}
+	
+	/**
+	 * Blocks until all writes which have been queued
+	 * so far have finished.
+	 */
+	public void flush() {
+		if (executor.isShutdown()) {
+			return;
+		}
+		
+		CompletableFuture.runAsync(() -> {}, executor).join();
+	}
+	
+	/**
+	 * Finishes all queued writes and stops the I/O thread.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		
+		try {
+			if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
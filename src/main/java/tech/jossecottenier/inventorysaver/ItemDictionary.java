@@ -0,0 +1,325 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+public class ItemDictionary {
+	public static final String FILE_NAME = "items.yml";
+	// Shorter items take up less space than a reference and an entry in the dictionary
+	protected static final int MIN_INTERNED_LENGTH = 32;
+	
+	private static final Map<File,ItemDictionary> dictionaries = new ConcurrentHashMap<>();
+	
+	private final File file;
+	private final Map<Integer,Entry> entries;
+	private final Map<String,Integer> ids;
+	// IDs are never reused, so a stale reference can't resolve to another item
+	private int nextId;
+	private boolean loaded;
+	private boolean dirty;
+	
+	private ItemDictionary(File folder) {
+		this.file = new File(folder, FILE_NAME);
+		this.entries = new TreeMap<>();
+		this.ids = new HashMap<>();
+	}
+	
+	/**
+	 * Gets the item dictionary of a world's inventory folder.
+	 * There is one instance per folder, which all lookups
+	 * and updates are synchronized on.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @return The world's item dictionary
+	 */
+	public static ItemDictionary forFolder(File folder) {
+		return dictionaries.computeIfAbsent(folder.getAbsoluteFile(), ItemDictionary::new);
+	}
+	
+	/**
+	 * Reads the dictionary from its file the first
+	 * time it is used.
+	 */
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		
+		if (!file.exists()) {
+			return;
+		}
+		
+		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+		final ConfigurationSection items = configuration.getConfigurationSection("items");
+		nextId = configuration.getInt("next-id");
+		
+		if (items == null) {
+			return;
+		}
+		
+		for (final String key : items.getKeys(false)) {
+			final int id = Integer.parseInt(key);
+			final Entry entry = new Entry(items.getString(key + ".item"));
+			entry.references = items.getInt(key + ".references");
+			
+			entries.put(id, entry);
+			ids.put(entry.item, id);
+			nextId = Math.max(nextId, id + 1);
+		}
+	}
+	
+	/**
+	 * Replaces the longer items of an inventory in the
+	 * string format by references to the dictionary, adding
+	 * the items which aren't in it yet. New items have no
+	 * references until updateReferences is called with the
+	 * inventory once it has been written.
+	 * 
+	 * @param inventory The serialized inventory
+	 * @return The inventory with references, or the inventory itself if it isn't in the string format
+	 */
+	public synchronized String intern(String inventory) {
+		final String[] items;
+		
+		try {
+			items = InventoryDelta.split(inventory);
+		} catch (IllegalArgumentException e) {
+			return inventory;
+		}
+		
+		load();
+		final StringBuilder interned = new StringBuilder(inventory.length());
+		interned.append(inventory, 0, ItemStringReader.getHeaderLength(inventory));
+		
+		for (int i = 0; i < items.length; i++) {
+			if (i > 0) {
+				interned.append(ItemStringReader.ITEM_SEPARATOR);
+			}
+			
+			if (items[i].length() < MIN_INTERNED_LENGTH) {
+				interned.append(items[i]);
+				continue;
+			}
+			
+			Integer id = ids.get(items[i]);
+			
+			if (id == null) {
+				id = nextId++;
+				entries.put(id, new Entry(items[i]));
+				ids.put(items[i], id);
+				dirty = true;
+			}
+			interned.append(ItemStringReader.REFERENCE_PREFIX).append(id.intValue());
+		}
+		
+		return interned.toString();
+	}
+	
+	/**
+	 * Replaces the references of an inventory by the
+	 * items in the dictionary.
+	 * 
+	 * @param inventory The serialized inventory, possibly with references
+	 * @return The inventory without references
+	 * @throws IOException If the inventory refers to an item which isn't in the dictionary
+	 */
+	public synchronized String resolve(String inventory) throws IOException {
+		if (inventory.indexOf(ItemStringReader.REFERENCE_PREFIX) < 0) {
+			return inventory;
+		}
+		
+		load();
+		final ItemStringReader reader = new ItemStringReader(inventory);
+		final StringBuilder resolved = new StringBuilder(inventory.length() * 2);
+		int start = reader.getPosition();
+		resolved.append(inventory, 0, start);
+		
+		try {
+			while (true) {
+				final int id = reader.readReference();
+				
+				if (id < 0) {
+					reader.skipItem();
+					resolved.append(inventory, start, reader.getPosition());
+				} else {
+					final Entry entry = entries.get(id);
+					
+					if (entry == null) {
+						throw new IOException(String.format("Inventory refers to unknown item %d of %s", id, file));
+					}
+					resolved.append(entry.item);
+				}
+				
+				if (!reader.skipItemSeparator()) {
+					break;
+				}
+				resolved.append(ItemStringReader.ITEM_SEPARATOR);
+				start = reader.getPosition();
+			}
+		} catch (IllegalArgumentException e) {
+			// Not in the string format, so it can't hold references
+			return inventory;
+		}
+		
+		return resolved.toString();
+	}
+	
+	/**
+	 * Moves the references of a player's previous inventory
+	 * over to the inventory which replaced it on disk.
+	 * 
+	 * @param previousInventory The replaced inventory, null if there was none
+	 * @param inventory The written inventory
+	 */
+	public synchronized void updateReferences(String previousInventory, String inventory) {
+		load();
+		
+		if (previousInventory != null) {
+			countReferences(previousInventory, -1);
+		}
+		countReferences(inventory, 1);
+	}
+	
+	/**
+	 * Counts all references from scratch, for when the
+	 * stored counts can't be trusted because the server
+	 * crashed while inventories were being written.
+	 * 
+	 * @param inventories All inventories stored in the world
+	 */
+	public synchronized void recount(Collection<String> inventories) {
+		load();
+		
+		for (final Entry entry : entries.values()) {
+			entry.references = 0;
+		}
+		for (final String inventory : inventories) {
+			countReferences(inventory, 1);
+		}
+		dirty = true;
+	}
+	
+	private void countReferences(String inventory, int change) {
+		if (inventory.indexOf(ItemStringReader.REFERENCE_PREFIX) < 0) {
+			return;
+		}
+		
+		final ItemStringReader reader = new ItemStringReader(inventory);
+		
+		try {
+			do {
+				final int id = reader.readReference();
+				
+				if (id < 0) {
+					reader.skipItem();
+				} else if (entries.containsKey(id)) {
+					entries.get(id).references += change;
+					dirty = true;
+				}
+			} while (reader.skipItemSeparator());
+		} catch (IllegalArgumentException e) {
+			// Not in the string format, so it can't hold references
+		}
+	}
+	
+	/**
+	 * Removes the items which aren't referenced anymore.
+	 * Should only be called once all inventories which
+	 * were interned have been written.
+	 * 
+	 * @return The amount of removed items
+	 */
+	public synchronized int collect() {
+		load();
+		final Iterator<Entry> iterator = entries.values().iterator();
+		int removedItems = 0;
+		
+		while (iterator.hasNext()) {
+			final Entry entry = iterator.next();
+			
+			if (entry.references <= 0) {
+				iterator.remove();
+				ids.remove(entry.item);
+				removedItems++;
+			}
+		}
+		
+		if (removedItems > 0) {
+			dirty = true;
+		}
+		
+		return removedItems;
+	}
+	
+	/**
+	 * Returns whether the dictionary holds no items,
+	 * in which case no inventory refers to it.
+	 * 
+	 * @return Whether the dictionary is empty
+	 */
+	public synchronized boolean isEmpty() {
+		load();
+		
+		return entries.isEmpty();
+	}
+	
+	/**
+	 * Getter for the amount of times an item is referred to.
+	 * 
+	 * @param item The serialized item
+	 * @return The amount of references, 0 if the item isn't in the dictionary
+	 */
+	public synchronized int getReferences(String item) {
+		load();
+		final Integer id = ids.get(item);
+		
+		return id == null ? 0 : entries.get(id).references;
+	}
+	
+	/**
+	 * Atomically replaces the dictionary's file if the
+	 * dictionary changed since it was last saved.
+	 * 
+	 * @throws IOException If the file could not be written
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		
+		final FileConfiguration configuration = new YamlConfiguration();
+		final File temporaryFile = new File(file.getPath() + ".tmp");
+		configuration.set("next-id", nextId);
+		
+		for (final Map.Entry<Integer,Entry> entry : entries.entrySet()) {
+			configuration.set("items." + entry.getKey() + ".item", entry.getValue().item);
+			configuration.set("items." + entry.getKey() + ".references", entry.getValue().references);
+		}
+		
+		configuration.save(temporaryFile);
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		dirty = false;
+	}
+	
+	private static class Entry {
+		private final String item;
+		private int references;
+		
+		private Entry(String item) {
+			this.item = item;
+		}
+	}
+}
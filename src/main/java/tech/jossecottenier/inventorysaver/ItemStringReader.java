@@ -0,0 +1,355 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.enchantments.Enchantment;
+
+public class ItemStringReader {
+	// Version of the string format, which saved inventories carry in a header
+	public static final int VERSION = 1;
+	public static final String HEADER = "v" + VERSION + ":";
+	public static final char ITEM_SEPARATOR = '-';
+	// Starts a reference to an item in a world's item dictionary instead of an item
+	public static final char REFERENCE_PREFIX = '#';
+	
+	// Open addressing table of all materials by name, so they can be looked up without substrings
+	private static final Material[] materialTable = createMaterialTable();
+	private static final Map<String,Enchantment> enchantments = new ConcurrentHashMap<>();
+	
+	private final String string;
+	private final int version;
+	private int position;
+	
+	/**
+	 * Creates a reader of an item string, skipping its
+	 * version header if it has one.
+	 * 
+	 * @param string The item string
+	 */
+	public ItemStringReader(String string) {
+		this.string = string;
+		this.position = getHeaderLength(string);
+		this.version = position == 0 ? 0 : Integer.parseInt(string.substring(1, position - 1));
+	}
+	
+	private static Material[] createMaterialTable() {
+		final Material[] materials = Material.values();
+		final Material[] table = new Material[Integer.highestOneBit(materials.length * 2 - 1) << 1];
+		
+		for (final Material material : materials) {
+			final String name = material.name();
+			int index = hash(name, 0, name.length()) & (table.length - 1);
+			
+			while (table[index] != null) {
+				index = (index + 1) & (table.length - 1);
+			}
+			table[index] = material;
+		}
+		
+		return table;
+	}
+	
+	private static int hash(String string, int start, int end) {
+		int hash = 0;
+		
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + string.charAt(i);
+		}
+		
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * Returns the length of the version header of an
+	 * item string, such as "v1:".
+	 * 
+	 * @param string The item string
+	 * @return Length of the header, 0 if the string has none
+	 */
+	public static int getHeaderLength(String string) {
+		if (string.isEmpty() || string.charAt(0) != 'v') {
+			return 0;
+		}
+		
+		int position = 1;
+		
+		while (position < string.length() && position < 10 && Character.isDigit(string.charAt(position))) {
+			position++;
+		}
+		
+		return position > 1 && position < string.length() && string.charAt(position) == ':' ? position + 1 : 0;
+	}
+	
+	/**
+	 * Getter for the version of the string format in
+	 * which the string was written.
+	 * 
+	 * @return Version from the header, 0 for strings written before headers were added
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns whether the whole string has been read.
+	 * 
+	 * @return Whether the end of the string has been reached
+	 */
+	public boolean hasRemaining() {
+		return position < string.length();
+	}
+	
+	/**
+	 * Returns whether the reader is at the end of an item,
+	 * either at an item separator or the end of the string.
+	 * 
+	 * @return Whether the current item has been read
+	 */
+	public boolean atItemEnd() {
+		return position >= string.length() || string.charAt(position) == ITEM_SEPARATOR;
+	}
+	
+	/**
+	 * Skips the separator after an item, if there is one.
+	 * 
+	 * @return Whether a separator was skipped
+	 */
+	public boolean skipItemSeparator() {
+		if (position < string.length() && string.charAt(position) == ITEM_SEPARATOR) {
+			position++;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Skips the current item without parsing it, leaving
+	 * the reader at the separator after the item.
+	 * 
+	 * @throws IllegalArgumentException If the item string is incomplete
+	 */
+	public void skipItem() {
+		if (atItemEnd()) {
+			return;
+		}
+		
+		// Skipping the name as a whole as it may contain separators itself
+		final int nameStart = string.indexOf(",n=", position);
+		final int damageStart = nameStart < 0 ? -1 : string.indexOf(",d=", nameStart);
+		
+		if (damageStart < 0) {
+			throw new IllegalArgumentException(String.format("Expected an item at index %d of item string", position));
+		}
+		
+		position = damageStart;
+		
+		while (!atItemEnd()) {
+			position++;
+		}
+	}
+	
+	/**
+	 * Reads a reference to an item in a world's item
+	 * dictionary, if the current item is one, leaving
+	 * the reader at the separator after it.
+	 * 
+	 * @return ID of the referenced item, or -1 if the current item isn't a reference
+	 * @throws IllegalArgumentException If the reference is malformed
+	 */
+	public int readReference() {
+		if (position >= string.length() || string.charAt(position) != REFERENCE_PREFIX) {
+			return -1;
+		}
+		
+		final int start = ++position;
+		int id = 0;
+		
+		while (!atItemEnd()) {
+			final int digit = Character.digit(string.charAt(position), 10);
+			
+			if (digit < 0) {
+				throw new IllegalArgumentException(String.format("Expected a reference at index %d of item string", start));
+			}
+			id = id * 10 + digit;
+			position++;
+		}
+		
+		if (position == start) {
+			throw new IllegalArgumentException(String.format("Expected a reference at index %d of item string", start));
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Getter for the index of the next character
+	 * to be read.
+	 * 
+	 * @return Current position in the string
+	 */
+	public int getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Skips the specified token, which must be next in the string.
+	 * 
+	 * @param token Expected token
+	 * @throws IllegalArgumentException If the token is not next in the string
+	 */
+	public void expect(String token) {
+		if (!string.startsWith(token, position)) {
+			throw new IllegalArgumentException(String.format("Expected \"%s\" at index %d of item string", token, position));
+		}
+		
+		position += token.length();
+	}
+	
+	/**
+	 * Skips a character if it is next in the string.
+	 * 
+	 * @param character Character to skip
+	 * @return Whether the character was skipped
+	 */
+	public boolean skip(char character) {
+		if (position < string.length() && string.charAt(position) == character) {
+			position++;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Skips a token if it is next in the string.
+	 * 
+	 * @param token Token to skip
+	 * @return Whether the token was skipped
+	 */
+	public boolean skip(String token) {
+		if (string.startsWith(token, position)) {
+			position += token.length();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Reads a non-negative number without creating a substring.
+	 * 
+	 * @return The number
+	 * @throws IllegalArgumentException If there is no number next in the string
+	 */
+	public int readInt() {
+		final int start = position;
+		int value = 0;
+		
+		while (position < string.length()) {
+			final char character = string.charAt(position);
+			
+			if (character < '0' || character > '9') {
+				break;
+			}
+			value = value * 10 + (character - '0');
+			position++;
+		}
+		
+		if (position == start) {
+			throw new IllegalArgumentException(String.format("Expected a number at index %d of item string", start));
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Reads a material name up to the next comma and looks
+	 * it up without creating a substring.
+	 * 
+	 * @return The material
+	 * @throws IllegalArgumentException If there is no such material
+	 */
+	public Material readMaterial() {
+		final int start = position;
+		
+		while (position < string.length() && string.charAt(position) != ',') {
+			position++;
+		}
+		
+		final int length = position - start;
+		int index = hash(string, start, position) & (materialTable.length - 1);
+		
+		while (materialTable[index] != null) {
+			final String name = materialTable[index].name();
+			
+			if (name.length() == length && string.regionMatches(start, name, 0, length)) {
+				return materialTable[index];
+			}
+			index = (index + 1) & (materialTable.length - 1);
+		}
+		
+		throw new IllegalArgumentException(String.format("Unknown material \"%s\"", string.substring(start, position)));
+	}
+	
+	/**
+	 * Reads a string up to (but not including) the
+	 * next occurrence of a specified terminator.
+	 * 
+	 * @param terminator Token which ends the string
+	 * @return The read string
+	 * @throws IllegalArgumentException If the terminator doesn't occur
+	 */
+	public String readUntil(String terminator) {
+		final int end = string.indexOf(terminator, position);
+		
+		if (end < 0) {
+			throw new IllegalArgumentException(String.format("Expected \"%s\" after index %d of item string", terminator, position));
+		}
+		
+		final String value = string.substring(position, end);
+		position = end;
+		
+		return value;
+	}
+	
+	/**
+	 * Reads a string up to (but not including) the next
+	 * comma or the end of the item.
+	 * 
+	 * @return The read string
+	 */
+	public String readArgument() {
+		final int start = position;
+		
+		while (!atItemEnd() && string.charAt(position) != ',') {
+			position++;
+		}
+		
+		return string.substring(start, position);
+	}
+	
+	/**
+	 * Reads the enchantment key in a key:level pair up to and
+	 * including the colon, looking it up in a cache of
+	 * previously read enchantments.
+	 * 
+	 * @return The enchantment, or null if it doesn't exist on this server version
+	 * @throws IllegalArgumentException If the key isn't followed by a colon
+	 */
+	public Enchantment readEnchantment() {
+		final int start = position;
+		
+		while (!atItemEnd() && string.charAt(position) != ':') {
+			position++;
+		}
+		
+		final String key = string.substring(start, position);
+		expect(":");
+		
+		return enchantments.computeIfAbsent(key, enchantmentKey -> Enchantment.getByKey(NamespacedKey.minecraft(enchantmentKey)));
+	}
+}
@@ -0,0 +1,255 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+public class LegacyInventoryMigrator {
+	private static final String MIGRATED_SUFFIX = ".migrated";
+	
+	// Legacy files which still hold inventories of players whose UUID isn't known, by lower case player name
+	private static final Map<String,Set<File>> pendingFiles = new ConcurrentHashMap<>();
+	
+	/**
+	 * Moves all inventory files of the old format, in which
+	 * one file per world contains the inventories of all
+	 * players keyed by their name, into the storage keyed
+	 * by UUID. Names are only looked up in the players the
+	 * server knows locally, as asking Mojang blocks and may
+	 * return the offline mode UUID. Inventories of unknown
+	 * players are kept in the legacy file and migrated once
+	 * they join. Fully migrated files are renamed so they
+	 * are only migrated once.
+	 * 
+	 * @param dataFolder Folder in which the inventory files are stored
+	 * @param server Server used to look up the UUIDs of players
+	 * @param storage Storage the inventories are moved to
+	 * @return The amount of fully migrated world files
+	 */
+	protected static int migrate(File dataFolder, Server server, InventoryStorage storage) {
+		final File[] files = dataFolder.listFiles((folder, name) -> name.endsWith(".yml") && !name.equals("config.yml"));
+		final Logger logger = server.getLogger();
+		int migratedFiles = 0;
+		
+		if (files == null) {
+			return 0;
+		}
+		
+		final Map<String,UUID> knownPlayers = getKnownPlayers(server);
+		
+		for (final File file : files) {
+			final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+			final Set<String> playerNames = configuration.getKeys(false);
+			
+			if (playerNames.isEmpty() || !isLegacyInventoryFile(configuration, playerNames)) {
+				continue;
+			}
+			
+			final File folder = getWorldFolder(file);
+			final List<StoredInventory> inventories = new ArrayList<>();
+			final List<String> unknownNames = new ArrayList<>();
+			
+			try {
+				for (final String playerName : playerNames) {
+					final UUID uuid = knownPlayers.get(playerName.toLowerCase(Locale.ROOT));
+					
+					if (uuid == null) {
+						unknownNames.add(playerName);
+					} else if (storage.load(folder, uuid) == null) {
+						// Don't overwrite inventories which were saved in the new format
+						inventories.add(new StoredInventory(uuid, playerName, configuration.getString(playerName)));
+					}
+				}
+				
+				if (!inventories.isEmpty()) {
+					storage.save(folder, inventories);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+			
+			if (unknownNames.isEmpty()) {
+				renameMigratedFile(file, logger);
+				logger.info(String.format("Migrated %d inventories from %s.", playerNames.size(), file.getName()));
+				migratedFiles++;
+				continue;
+			}
+			
+			for (final String playerName : playerNames) {
+				if (!unknownNames.contains(playerName)) {
+					configuration.set(playerName, null);
+				}
+			}
+			for (final String playerName : unknownNames) {
+				pendingFiles.computeIfAbsent(playerName.toLowerCase(Locale.ROOT), key -> ConcurrentHashMap.newKeySet()).add(file);
+			}
+			
+			try {
+				// Only the inventories of unknown players are left, so migrated ones can't overwrite newer saves later on
+				configuration.save(file);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			logger.info(String.format("Migrated %d inventories from %s, %d are migrated once their player joins.", playerNames.size() - unknownNames.size(), file.getName(), unknownNames.size()));
+		}
+		
+		return migratedFiles;
+	}
+	
+	/**
+	 * Moves a joining player's inventories which are still
+	 * in legacy files into the storage, now that the UUID
+	 * of the player's name is known for sure. Inventories
+	 * are only removed from the legacy files once they have
+	 * been written, and legacy files are renamed once all
+	 * of their inventories have been migrated.
+	 * 
+	 * @param player The joining player
+	 * @param cache Cache through which the inventories are saved
+	 * @return The amount of migrated inventories
+	 */
+	protected static int migrate(Player player, WorldInventoryCache cache) {
+		final Set<File> files = pendingFiles.remove(player.getName().toLowerCase(Locale.ROOT));
+		final Logger logger = player.getServer().getLogger();
+		int migratedInventories = 0;
+		
+		if (files == null) {
+			return 0;
+		}
+		
+		for (final File file : files) {
+			final FileConfiguration configuration;
+			
+			synchronized (LegacyInventoryMigrator.class) {
+				configuration = YamlConfiguration.loadConfiguration(file);
+			}
+			
+			final File folder = getWorldFolder(file);
+			
+			for (final String playerName : configuration.getKeys(false)) {
+				if (!playerName.equalsIgnoreCase(player.getName())) {
+					continue;
+				}
+				
+				// Don't overwrite inventories which were saved in the new format
+				if (cache.get(folder, player.getUniqueId()) == null) {
+					cache.put(folder, player.getUniqueId(), player.getName(), configuration.getString(playerName))
+							.thenRun(() -> removeInventory(file, playerName, logger));
+					migratedInventories++;
+				} else {
+					removeInventory(file, playerName, logger);
+				}
+			}
+		}
+		
+		return migratedInventories;
+	}
+	
+	/**
+	 * Removes a migrated inventory from a legacy file, and
+	 * renames the file once it holds no more inventories.
+	 * 
+	 * @param file The legacy file
+	 * @param playerName Name under which the inventory is stored
+	 * @param logger Logger to report a failed rename to
+	 */
+	private static synchronized void removeInventory(File file, String playerName, Logger logger) {
+		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+		configuration.set(playerName, null);
+		
+		if (configuration.getKeys(false).isEmpty()) {
+			renameMigratedFile(file, logger);
+			return;
+		}
+		
+		try {
+			configuration.save(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Maps the lower case names of all players the server
+	 * knows locally, from its player data and user cache,
+	 * to their UUID.
+	 * 
+	 * @param server The server
+	 * @return UUIDs of the known players by lower case name
+	 */
+	private static Map<String,UUID> getKnownPlayers(Server server) {
+		final Map<String,UUID> players = new HashMap<>();
+		
+		for (final OfflinePlayer player : server.getOfflinePlayers()) {
+			if (player.getName() != null) {
+				players.put(player.getName().toLowerCase(Locale.ROOT), player.getUniqueId());
+			}
+		}
+		// Online players are always known, also when the plugin gets reloaded
+		for (final Player player : server.getOnlinePlayers()) {
+			players.put(player.getName().toLowerCase(Locale.ROOT), player.getUniqueId());
+		}
+		
+		return players;
+	}
+	
+	private static File getWorldFolder(File file) {
+		return new File(file.getParentFile(), file.getName().substring(0, file.getName().length() - 4));
+	}
+	
+	private static void renameMigratedFile(File file, Logger logger) {
+		if (!file.renameTo(new File(file.getPath() + MIGRATED_SUFFIX))) {
+			logger.warning(String.format("Could not rename migrated inventory file %s.", file.getName()));
+		}
+	}
+	
+	/**
+	 * Returns whether a YML file is an inventory file of the
+	 * old format, which only contains serialized inventories.
+	 * 
+	 * @param configuration The loaded YML file
+	 * @param keys Top level keys of the file
+	 * @return Whether the file is an old inventory file
+	 */
+	private static boolean isLegacyInventoryFile(FileConfiguration configuration, Set<String> keys) {
+		for (final String key : keys) {
+			if (!configuration.isString(key)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Migrates all inventory files of the old format
+	 * in the InventorySaver plugin's namespace into the
+	 * configured storage.
+	 */
+	public static int migrate() {
+		return migrate(Main.instance.getDataFolder(), Main.instance.getServer(), WorldInventoryCache.getInstance().getStorage());
+	}
+	
+	/*
+	 * Migrates the inventories of a joining player which
+	 * are still in inventory files of the old format.
+	 */
+	public static int migrate(Player player) {
+		return migrate(player, WorldInventoryCache.getInstance());
+	}
+}
@@ -2,8 +2,23 @@ package tech.jossecottenier.inventorysaver;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.plugin.java.JavaPluginLoader;
@@ -13,6 +28,8 @@ public class Main extends JavaPlugin {
 	private static File configFile;
 	
 	private InventorySaver inventorySaver;
+	// The running migration, null if there is none
+	private volatile InventoryMigrator migrator;
 	
 	public Main() {
 		super();
@@ -35,7 +52,12 @@ public class Main extends JavaPlugin {
 			e.printStackTrace();
 		}
 		
+		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(configFile);
 		inventorySaver = new InventorySaver();
+		inventorySaver.setCompactFormat(configuration.getBoolean("compact-format", false));
+		inventorySaver.setCompression(configuration.getBoolean("compression", false));
+		inventorySaver.setCoalescingWindow(configuration.getLong("coalescing.window", 1000));
+		inventorySaver.setPlayerState(configuration.getBoolean("player-state", false));
 		final PluginCommand inventoryCommand = this.getCommand("inventory");
 		this.getServer().getPluginManager().registerEvents(inventorySaver, this);
 		
@@ -44,7 +66,212 @@ public class Main extends JavaPlugin {
 			inventoryCommand.setTabCompleter(new TabComplete());
 		}
 		
+		WorldInventoryCache.getInstance().setStorage(createStorage(configuration));
+		LegacyInventoryMigrator.migrate();
+		recoverSaves();
 		ControlledWorlds.loadFromFile();
+		scheduleCacheFlushes(configuration);
+		scheduleAutosaves(configuration);
+		registerMetrics();
+	}
+	
+	@Override
+	public void onDisable() {
+		final InventoryMigrator runningMigrator = migrator;
+		
+		if (runningMigrator != null) {
+			runningMigrator.cancel();
+		}
+		
+		// Players are only kicked after plugins are disabled, so they won't trigger a save on quit
+		if (inventorySaver != null) {
+			saveAllInventories();
+		}
+		
+		// Write all inventories which are still coalesced, cached or queued
+		InventorySaver.flushCoalescedSaves();
+		WorldInventoryCache.shutdownInstance();
+		InventoryWriter.shutdownInstance();
+		unregisterMetrics();
+	}
+	
+	/*
+	 * Exposes the save and load metrics through JMX, so
+	 * they can be followed with tools like VisualVM.
+	 */
+	private void registerMetrics() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(InventoryMetrics.OBJECT_NAME);
+			
+			// Left behind when the plugin gets reloaded
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(InventoryMetrics.getInstance(), name);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void unregisterMetrics() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(InventoryMetrics.OBJECT_NAME);
+			
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Applies the cache settings from the config.yml file
+	 * and periodically writes the cached inventories.
+	 */
+	private void scheduleCacheFlushes(FileConfiguration configuration) {
+		final long flushInterval = Math.max(1, configuration.getLong("cache.flush-interval", 30)) * 20;
+		
+		WorldInventoryCache.getInstance().setMaxWorlds(configuration.getInt("cache.max-worlds", 16));
+		this.getServer().getScheduler().runTaskTimer(this, this::flushInventories, flushInterval, flushInterval);
+	}
+	
+	/**
+	 * Writes all cached inventories which haven't been saved
+	 * yet and evicts the worlds nobody is playing in, and
+	 * the inventories of players who left a world, from
+	 * the cache.
+	 */
+	protected void flushInventories() {
+		final Map<String,Set<UUID>> players = new HashMap<>();
+		
+		for (final Player player : this.getServer().getOnlinePlayers()) {
+			players.computeIfAbsent(player.getWorld().getName(), world -> new HashSet<>()).add(player.getUniqueId());
+		}
+		
+		WorldInventoryCache.getInstance().flush(players);
+	}
+	
+	/*
+	 * Creates the inventory storage configured in the
+	 * config.yml file, which is the YML storage unless
+	 * specified otherwise.
+	 */
+	private InventoryStorage createStorage(FileConfiguration configuration) {
+		final String storage = configuration.getString("storage", "yaml");
+		
+		if (storage.equalsIgnoreCase("sqlite")) {
+			try {
+				return new SqliteInventoryStorage(this.getDataFolder());
+			} catch (IOException e) {
+				e.printStackTrace();
+				getLogger().warning("Could not open the SQLite database, inventories are stored in YML files instead.");
+			}
+		} else if (storage.equalsIgnoreCase("mapped")) {
+			return new MappedInventoryStorage();
+		} else if (!storage.equalsIgnoreCase("yaml")) {
+			getLogger().warning(String.format("Unknown storage %s, inventories are stored in YML files instead.", storage));
+		}
+		
+		final YamlInventoryStorage yamlStorage = new YamlInventoryStorage(configuration.getLong("journal.max-size", 1024) * 1024);
+		yamlStorage.setItemDictionary(configuration.getBoolean("journal.item-dictionary", false));
+		
+		return yamlStorage;
+	}
+	
+	/*
+	 * Writes the saves which were only written in a temporary
+	 * form before the server stopped to their final form.
+	 */
+	private void recoverSaves() {
+		final int recoveredWorlds = WorldInventoryCache.getInstance().recover(this.getDataFolder());
+		
+		if (recoveredWorlds > 0) {
+			getLogger().info(String.format("Recovered the inventory saves of %d worlds.", recoveredWorlds));
+		}
+	}
+	
+	/*
+	 * Periodically saves the inventories of all players
+	 * in controlled worlds, unless disabled in the
+	 * config.yml file.
+	 */
+	private void scheduleAutosaves(FileConfiguration configuration) {
+		final long autosaveInterval = configuration.getLong("autosave.interval", 300) * 20;
+		
+		if (autosaveInterval > 0) {
+			this.getServer().getScheduler().runTaskTimer(this, this::saveAllInventories, autosaveInterval, autosaveInterval);
+		}
+	}
+	
+	/**
+	 * Saves the inventories of all online players which
+	 * are in controlled worlds in a single batch.
+	 * 
+	 * @return The amount of players whose inventories are being saved
+	 */
+	protected int saveAllInventories() {
+		final List<Player> players = new ArrayList<>();
+		
+		for (final Player player : this.getServer().getOnlinePlayers()) {
+			if (ControlledWorlds.isControlled(player.getWorld())) {
+				players.add(player);
+			}
+		}
+		
+		if (!players.isEmpty()) {
+			inventorySaver.saveInventories(players, this);
+		}
+		
+		return players.size();
+	}
+	
+	/**
+	 * Converts the inventories saved in YML files of one or
+	 * all worlds to the current version of the configured
+	 * format. The migration runs on a thread of its own and
+	 * logs its progress to the console.
+	 * 
+	 * @param worldName Name of the world to migrate, or null to migrate all worlds
+	 * @return The amount of worlds being migrated
+	 * @throws IllegalStateException If inventories aren't stored in YML files or a migration is already running
+	 */
+	protected synchronized int migrateInventories(String worldName) {
+		final InventoryStorage storage = WorldInventoryCache.getInstance().getStorage();
+		
+		if (!(storage instanceof YamlInventoryStorage)) {
+			throw new IllegalStateException("Only inventories stored in YML files can be migrated.");
+		}
+		if (migrator != null) {
+			throw new IllegalStateException("A migration is already running.");
+		}
+		
+		final File[] folders = worldName == null ? this.getDataFolder().listFiles(File::isDirectory) : new File[] { new File(this.getDataFolder(), worldName) };
+		
+		if (folders == null || folders.length == 0 || !folders[0].isDirectory()) {
+			return 0;
+		}
+		
+		final InventoryMigrator inventoryMigrator = new InventoryMigrator(inventorySaver, (YamlInventoryStorage)storage, getLogger());
+		migrator = inventoryMigrator;
+		
+		this.getServer().getScheduler().runTaskAsynchronously(this, () -> {
+			try {
+				for (final File folder : folders) {
+					inventoryMigrator.migrate(folder);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				synchronized (this) {
+					migrator = null;
+				}
+			}
+		});
+		
+		return folders.length;
 	}
 	
 	public static File getConfigFile() {
@@ -0,0 +1,442 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+public class MappedInventoryStorage implements InventoryStorage {
+	public static final String FILE_NAME = "inventories.dat";
+	protected static final int SLOT_SIZE = 512;
+	// UUID, sequence number, slot count, payload length and checksum in front of every record
+	private static final int HEADER_SIZE = 16 + 8 + 4 + 4 + 4;
+	private static final int INITIAL_SLOTS = 64;
+	private static final byte STRING_INVENTORY = 0;
+	private static final byte COMPACT_INVENTORY = 1;
+	private static final byte COMPRESSED_INVENTORY = 2;
+	private static final byte PLAYER_STATE = 3;
+	// Marks regions which don't hold a record anymore
+	private static final UUID FREE = new UUID(0, 0);
+	
+	private final Map<File,MappedWorld> worlds;
+	
+	public MappedInventoryStorage() {
+		this.worlds = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Returns the mapped inventory file of a world, opening
+	 * it the first time.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param create Whether to create the file if it doesn't exist yet
+	 * @return The mapped world, or null if it doesn't exist and shouldn't be created
+	 * @throws IOException If the file could not be opened
+	 */
+	private MappedWorld getMappedWorld(File folder, boolean create) throws IOException {
+		MappedWorld mappedWorld = worlds.get(folder);
+		
+		if (mappedWorld != null) {
+			return mappedWorld;
+		}
+		
+		synchronized (worlds) {
+			mappedWorld = worlds.get(folder);
+			final File file = new File(folder, FILE_NAME);
+			
+			if (mappedWorld == null && (create || file.exists())) {
+				folder.mkdirs();
+				mappedWorld = new MappedWorld(file);
+				worlds.put(folder, mappedWorld);
+			}
+			
+			return mappedWorld;
+		}
+	}
+	
+	/**
+	 * Reads a player's record straight from the mapped
+	 * file through the in-memory index.
+	 */
+	@Override
+	public StoredInventory load(File folder, UUID uuid) throws IOException {
+		final MappedWorld mappedWorld = getMappedWorld(folder, false);
+		
+		return mappedWorld == null ? null : mappedWorld.load(uuid);
+	}
+	
+	/**
+	 * Writes every inventory to a free region of the mapped
+	 * file, leaving the records of other players untouched.
+	 */
+	@Override
+	public void save(File folder, Collection<StoredInventory> inventories) throws IOException {
+		getMappedWorld(folder, true).save(inventories);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		synchronized (worlds) {
+			for (final MappedWorld mappedWorld : worlds.values()) {
+				mappedWorld.close();
+			}
+			
+			worlds.clear();
+		}
+	}
+	
+	/**
+	 * Returns the amount of slots a world's records and
+	 * the free regions in between take up.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @return The amount of used slots, 0 if the world has no inventory file
+	 * @throws IOException If the file could not be opened
+	 */
+	protected int getUsedSlots(File folder) throws IOException {
+		final MappedWorld mappedWorld = getMappedWorld(folder, false);
+		
+		return mappedWorld == null ? 0 : mappedWorld.getUsedSlots();
+	}
+	
+	private static byte[] encode(StoredInventory inventory) {
+		final byte[] name = inventory.getName() == null ? null : inventory.getName().getBytes(StandardCharsets.UTF_8);
+		final byte type;
+		final byte[] data;
+		
+		// Compact and compressed inventories and player states are stored as raw bytes instead of Base64
+		if (inventory.getInventory().startsWith(InventorySaver.COMPACT_PREFIX)) {
+			type = COMPACT_INVENTORY;
+			data = Base64.getDecoder().decode(inventory.getInventory().substring(InventorySaver.COMPACT_PREFIX.length()));
+		} else if (inventory.getInventory().startsWith(InventorySaver.COMPRESSED_PREFIX)) {
+			type = COMPRESSED_INVENTORY;
+			data = Base64.getDecoder().decode(inventory.getInventory().substring(InventorySaver.COMPRESSED_PREFIX.length()));
+		} else if (inventory.getInventory().startsWith(InventorySaver.PLAYER_STATE_PREFIX)) {
+			type = PLAYER_STATE;
+			data = Base64.getDecoder().decode(inventory.getInventory().substring(InventorySaver.PLAYER_STATE_PREFIX.length()));
+		} else {
+			type = STRING_INVENTORY;
+			data = inventory.getInventory().getBytes(StandardCharsets.UTF_8);
+		}
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + (name == null ? 0 : name.length) + data.length);
+		
+		buffer.put(type);
+		buffer.putInt(name == null ? -1 : name.length);
+		if (name != null) {
+			buffer.put(name);
+		}
+		buffer.put(data);
+		
+		return buffer.array();
+	}
+	
+	private static StoredInventory decode(UUID uuid, byte[] payload) {
+		final ByteBuffer buffer = ByteBuffer.wrap(payload);
+		final byte type = buffer.get();
+		final int nameLength = buffer.getInt();
+		final String name = nameLength < 0 ? null : new String(payload, buffer.position(), nameLength, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + Math.max(0, nameLength));
+		
+		final String inventory;
+		
+		if (type == STRING_INVENTORY) {
+			inventory = new String(payload, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+		} else {
+			final String prefix = type == COMPACT_INVENTORY ? InventorySaver.COMPACT_PREFIX : type == PLAYER_STATE ? InventorySaver.PLAYER_STATE_PREFIX : InventorySaver.COMPRESSED_PREFIX;
+			inventory = prefix + Base64.getEncoder().encodeToString(Arrays.copyOfRange(payload, buffer.position(), payload.length));
+		}
+		
+		return new StoredInventory(uuid, name, inventory);
+	}
+	
+	private static class MappedWorld {
+		private final FileChannel channel;
+		private MappedByteBuffer buffer;
+		private final Map<UUID,Region> index;
+		// Free regions by their first slot, so neighbouring ones can be merged
+		private final TreeMap<Integer,Region> freeRegions;
+		private int usedSlots;
+		private long sequence;
+		
+		private MappedWorld(File file) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size() / SLOT_SIZE, INITIAL_SLOTS) * SLOT_SIZE);
+			this.index = new HashMap<>();
+			this.freeRegions = new TreeMap<>();
+			scan();
+		}
+		
+		/**
+		 * Rebuilds the index by walking over all regions of the
+		 * file. Records which were torn by a crash are freed, and
+		 * of a player's duplicate records, left behind by a crash
+		 * before the old record was freed, the latest is kept.
+		 * Neighbouring free regions are merged, and free regions
+		 * at the end of the file are cut off.
+		 */
+		private void scan() {
+			final int slots = buffer.capacity() / SLOT_SIZE;
+			int slot = 0;
+			
+			while (slot < slots) {
+				final int position = slot * SLOT_SIZE;
+				final int regionSlots = buffer.getInt(position + 24);
+				
+				// Nothing has been written past the last region
+				if (regionSlots <= 0 || regionSlots > slots - slot) {
+					break;
+				}
+				
+				final Region region = new Region(slot, regionSlots, buffer.getLong(position + 16));
+				final UUID uuid = new UUID(buffer.getLong(position), buffer.getLong(position + 8));
+				
+				if (uuid.equals(FREE) || !isValid(region)) {
+					free(region);
+				} else {
+					final Region previousRegion = index.get(uuid);
+					
+					if (previousRegion == null || previousRegion.sequence < region.sequence) {
+						index.put(uuid, region);
+						
+						if (previousRegion != null) {
+							free(previousRegion);
+						}
+					} else {
+						free(region);
+					}
+					sequence = Math.max(sequence, region.sequence);
+				}
+				
+				slot += regionSlots;
+			}
+			
+			usedSlots = slot;
+			trimFreeTail();
+		}
+		
+		private boolean isValid(Region region) {
+			final int position = region.slot * SLOT_SIZE;
+			final int length = buffer.getInt(position + 28);
+			
+			if (length < 0 || HEADER_SIZE + length > region.slots * SLOT_SIZE) {
+				return false;
+			}
+			
+			return checksum(position, length) == buffer.getInt(position + 32);
+		}
+		
+		private int checksum(int position, int length) {
+			final CRC32 checksum = new CRC32();
+			final ByteBuffer header = buffer.duplicate();
+			header.position(position).limit(position + 32);
+			checksum.update(header);
+			
+			final ByteBuffer payload = buffer.duplicate();
+			payload.position(position + HEADER_SIZE).limit(position + HEADER_SIZE + length);
+			checksum.update(payload);
+			
+			return (int)checksum.getValue();
+		}
+		
+		private synchronized StoredInventory load(UUID uuid) {
+			final Region region = index.get(uuid);
+			
+			if (region == null) {
+				return null;
+			}
+			
+			final int position = region.slot * SLOT_SIZE;
+			final byte[] payload = new byte[buffer.getInt(position + 28)];
+			final ByteBuffer data = buffer.duplicate();
+			data.position(position + HEADER_SIZE);
+			data.get(payload);
+			
+			return decode(uuid, payload);
+		}
+		
+		/**
+		 * Writes the new records before freeing the old ones,
+		 * so a crash in between leaves at least one intact
+		 * record of every player.
+		 */
+		private synchronized void save(Collection<StoredInventory> inventories) throws IOException {
+			final List<Region> replacedRegions = new ArrayList<>();
+			long writtenBytes = 0;
+			
+			for (final StoredInventory inventory : inventories) {
+				final byte[] payload = encode(inventory);
+				writtenBytes += HEADER_SIZE + payload.length;
+				final Region region = allocate((HEADER_SIZE + payload.length + SLOT_SIZE - 1) / SLOT_SIZE);
+				region.sequence = ++sequence;
+				write(region, inventory.getUuid(), payload);
+				
+				final Region previousRegion = index.put(inventory.getUuid(), region);
+				if (previousRegion != null) {
+					replacedRegions.add(previousRegion);
+				}
+			}
+			
+			buffer.force();
+			InventoryMetrics.getInstance().add(InventoryMetrics.Counter.BYTES_WRITTEN, writtenBytes);
+			
+			for (final Region region : replacedRegions) {
+				free(region);
+			}
+		}
+		
+		private void write(Region region, UUID uuid, byte[] payload) {
+			final int position = region.slot * SLOT_SIZE;
+			final ByteBuffer data = buffer.duplicate();
+			data.position(position + HEADER_SIZE);
+			data.put(payload);
+			
+			buffer.putLong(position, uuid.getMostSignificantBits());
+			buffer.putLong(position + 8, uuid.getLeastSignificantBits());
+			buffer.putLong(position + 16, region.sequence);
+			buffer.putInt(position + 24, region.slots);
+			buffer.putInt(position + 28, payload.length);
+			buffer.putInt(position + 32, checksum(position, payload.length));
+		}
+		
+		/**
+		 * Takes the first free region which is large enough,
+		 * splitting off what's left of it, or appends a new
+		 * region to the end of the file.
+		 */
+		private Region allocate(int slots) throws IOException {
+			final Iterator<Region> iterator = freeRegions.values().iterator();
+			
+			while (iterator.hasNext()) {
+				final Region freeRegion = iterator.next();
+				
+				if (freeRegion.slots >= slots) {
+					iterator.remove();
+					
+					if (freeRegion.slots > slots) {
+						free(new Region(freeRegion.slot + slots, freeRegion.slots - slots, 0));
+					}
+					
+					return new Region(freeRegion.slot, slots, 0);
+				}
+			}
+			
+			ensureCapacity(usedSlots + slots);
+			final Region region = new Region(usedSlots, slots, 0);
+			usedSlots += slots;
+			markEnd();
+			
+			return region;
+		}
+		
+		/**
+		 * Marks a region as free, merging it with the free
+		 * regions right before and after it. A free region at
+		 * the end of the file is cut off, so the file doesn't
+		 * keep growing as records get relocated.
+		 */
+		private void free(Region region) {
+			Region freeRegion = region;
+			final Map.Entry<Integer,Region> previous = freeRegions.lowerEntry(region.slot);
+			final Region next = freeRegions.get(region.slot + region.slots);
+			
+			if (previous != null && previous.getValue().slot + previous.getValue().slots == region.slot) {
+				freeRegions.remove(previous.getKey());
+				freeRegion = new Region(previous.getValue().slot, previous.getValue().slots + freeRegion.slots, 0);
+			}
+			if (next != null) {
+				freeRegions.remove(next.slot);
+				freeRegion = new Region(freeRegion.slot, freeRegion.slots + next.slots, 0);
+			}
+			
+			final int position = freeRegion.slot * SLOT_SIZE;
+			
+			buffer.putLong(position, FREE.getMostSignificantBits());
+			buffer.putLong(position + 8, FREE.getLeastSignificantBits());
+			buffer.putInt(position + 24, freeRegion.slots);
+			freeRegions.put(freeRegion.slot, freeRegion);
+			trimFreeTail();
+		}
+		
+		private void trimFreeTail() {
+			final Map.Entry<Integer,Region> last = freeRegions.lastEntry();
+			
+			if (last != null && last.getValue().slot + last.getValue().slots == usedSlots) {
+				freeRegions.remove(last.getKey());
+				usedSlots = last.getKey();
+				markEnd();
+			}
+		}
+		
+		/**
+		 * Clears the region header after the last region, as
+		 * regions which were cut off or relocated may have
+		 * left a header there, which a scan would walk into.
+		 */
+		private void markEnd() {
+			if ((long)usedSlots * SLOT_SIZE < buffer.capacity()) {
+				buffer.putInt(usedSlots * SLOT_SIZE + 24, 0);
+			}
+		}
+		
+		/**
+		 * Grows the mapping by doubling it until the specified
+		 * amount of slots fits.
+		 */
+		private void ensureCapacity(int slots) throws IOException {
+			long capacity = buffer.capacity();
+			
+			if ((long)slots * SLOT_SIZE <= capacity) {
+				return;
+			}
+			
+			while (capacity < (long)slots * SLOT_SIZE) {
+				capacity *= 2;
+			}
+			
+			if (capacity > Integer.MAX_VALUE) {
+				throw new IOException("Inventory file can't grow any further");
+			}
+			
+			buffer.force();
+			// The old mapping can't be unmapped explicitly, it is only released once it gets garbage collected
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+		
+		private synchronized int getUsedSlots() {
+			return usedSlots;
+		}
+		
+		private synchronized void close() throws IOException {
+			buffer.force();
+			channel.close();
+		}
+	}
+	
+	private static class Region {
+		private final int slot;
+		private final int slots;
+		private long sequence;
+		
+		private Region(int slot, int slots, long sequence) {
+			this.slot = slot;
+			this.slots = slots;
+			this.sequence = sequence;
+		}
+	}
+}
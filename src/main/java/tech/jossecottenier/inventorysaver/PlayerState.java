@@ -0,0 +1,343 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+public class PlayerState {
+	// Flags of a potion effect in compact data
+	private static final int FLAG_AMBIENT = 0x01;
+	private static final int FLAG_PARTICLES = 0x02;
+	private static final int FLAG_ICON = 0x04;
+	
+	private final ItemStack[] contents;
+	private final ItemStack[] enderChestContents;
+	private final int heldItemSlot;
+	private final int level;
+	private final float exp;
+	private final int totalExperience;
+	private final double health;
+	private final int foodLevel;
+	private final float saturation;
+	private final float exhaustion;
+	private final List<PotionEffect> potionEffects;
+	
+	/**
+	 * Creates a state which only holds inventory
+	 * contents, as saved by older versions or with
+	 * player states disabled.
+	 * 
+	 * @param contents Contents of the player's inventory
+	 */
+	public PlayerState(ItemStack[] contents) {
+		this(contents, null, 0, 0, 0, 0, 0, 0, 0, 0, Collections.emptyList());
+	}
+	
+	/**
+	 * Creates a full player state.
+	 * 
+	 * @param contents Contents of the player's inventory
+	 * @param enderChestContents Contents of the player's ender chest
+	 * @param heldItemSlot The selected hotbar slot
+	 * @param level The experience level
+	 * @param exp Progress towards the next level
+	 * @param totalExperience The total experience points
+	 * @param health The health
+	 * @param foodLevel The food level
+	 * @param saturation The food saturation
+	 * @param exhaustion The food exhaustion
+	 * @param potionEffects The active potion effects
+	 */
+	public PlayerState(ItemStack[] contents, ItemStack[] enderChestContents, int heldItemSlot, int level, float exp, int totalExperience, double health, int foodLevel, float saturation, float exhaustion, Collection<PotionEffect> potionEffects) {
+		this.contents = contents;
+		this.enderChestContents = enderChestContents;
+		this.heldItemSlot = heldItemSlot;
+		this.level = level;
+		this.exp = exp;
+		this.totalExperience = totalExperience;
+		this.health = health;
+		this.foodLevel = foodLevel;
+		this.saturation = saturation;
+		this.exhaustion = exhaustion;
+		this.potionEffects = Collections.unmodifiableList(new ArrayList<>(potionEffects));
+	}
+	
+	/**
+	 * Snapshots the full state of a player, copying
+	 * the items so the snapshot can safely be
+	 * serialized off the main thread.
+	 * 
+	 * @param player Player whose state is to be snapshotted
+	 * @return Snapshot of the player's state
+	 */
+	public static PlayerState capture(Player player) {
+		return new PlayerState(InventorySaver.copyContents(player.getInventory().getContents()), InventorySaver.copyContents(player.getEnderChest().getContents()),
+				player.getInventory().getHeldItemSlot(), player.getLevel(), player.getExp(), player.getTotalExperience(), player.getHealth(),
+				player.getFoodLevel(), player.getSaturation(), player.getExhaustion(), player.getActivePotionEffects());
+	}
+	
+	/**
+	 * Returns whether this state holds more than the
+	 * inventory contents, which is the case if it
+	 * was captured with player states enabled.
+	 * 
+	 * @return Whether this is a full player state
+	 */
+	public boolean isFullState() {
+		return enderChestContents != null;
+	}
+	
+	/**
+	 * Getter for the contents of the player's inventory,
+	 * including the armor and off-hand slots.
+	 * 
+	 * @return The inventory contents
+	 */
+	public ItemStack[] getContents() {
+		return contents;
+	}
+	
+	/**
+	 * Getter for the contents of the player's ender chest.
+	 * 
+	 * @return The ender chest contents, null if this isn't a full state
+	 */
+	public ItemStack[] getEnderChestContents() {
+		return enderChestContents;
+	}
+	
+	/**
+	 * Getter for the selected hotbar slot.
+	 * 
+	 * @return The selected hotbar slot
+	 */
+	public int getHeldItemSlot() {
+		return heldItemSlot;
+	}
+	
+	/**
+	 * Getter for the experience level.
+	 * 
+	 * @return The experience level
+	 */
+	public int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Getter for the progress towards the next level.
+	 * 
+	 * @return Progress between 0 and 1
+	 */
+	public float getExp() {
+		return exp;
+	}
+	
+	/**
+	 * Getter for the total experience points.
+	 * 
+	 * @return The total experience points
+	 */
+	public int getTotalExperience() {
+		return totalExperience;
+	}
+	
+	/**
+	 * Getter for the health.
+	 * 
+	 * @return The health
+	 */
+	public double getHealth() {
+		return health;
+	}
+	
+	/**
+	 * Getter for the food level.
+	 * 
+	 * @return The food level
+	 */
+	public int getFoodLevel() {
+		return foodLevel;
+	}
+	
+	/**
+	 * Getter for the food saturation.
+	 * 
+	 * @return The saturation
+	 */
+	public float getSaturation() {
+		return saturation;
+	}
+	
+	/**
+	 * Getter for the food exhaustion.
+	 * 
+	 * @return The exhaustion
+	 */
+	public float getExhaustion() {
+		return exhaustion;
+	}
+	
+	/**
+	 * Getter for the active potion effects.
+	 * 
+	 * @return Unmodifiable list of the potion effects
+	 */
+	public List<PotionEffect> getPotionEffects() {
+		return potionEffects;
+	}
+	
+	/**
+	 * Applies this state to a player. States which only
+	 * hold inventory contents leave the rest of the
+	 * player's state as it is.
+	 * 
+	 * @param player Player to which the state is applied
+	 */
+	public void applyTo(Player player) {
+		player.getInventory().setContents(contents);
+		
+		if (!isFullState()) {
+			return;
+		}
+		
+		player.getEnderChest().setContents(enderChestContents);
+		player.getInventory().setHeldItemSlot(heldItemSlot);
+		player.setLevel(level);
+		player.setExp(exp);
+		player.setTotalExperience(totalExperience);
+		player.setFoodLevel(foodLevel);
+		player.setSaturation(saturation);
+		player.setExhaustion(exhaustion);
+		
+		// The maximum health may be lower in this world, e.g. because of other plugins
+		final AttributeInstance maxHealth = player.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+		player.setHealth(maxHealth == null ? health : Math.min(health, maxHealth.getValue()));
+		
+		for (final PotionEffect potionEffect : player.getActivePotionEffects()) {
+			player.removePotionEffect(potionEffect.getType());
+		}
+		for (final PotionEffect potionEffect : potionEffects) {
+			player.addPotionEffect(potionEffect);
+		}
+	}
+	
+	/**
+	 * Returns a copy of this state, with copies
+	 * of the items.
+	 * 
+	 * @return Copy of this state
+	 */
+	public PlayerState copy() {
+		return new PlayerState(InventorySaver.copyContents(contents), enderChestContents == null ? null : InventorySaver.copyContents(enderChestContents),
+				heldItemSlot, level, exp, totalExperience, health, foodLevel, saturation, exhaustion, potionEffects);
+	}
+	
+	/**
+	 * Serializes this state to compact data, with the
+	 * inventory and ender chest contents in the same
+	 * layout as compact inventories.
+	 * 
+	 * @param writer Writer of the compact data
+	 * @throws IllegalStateException If this isn't a full state
+	 */
+	public void serialize(CompactWriter writer) {
+		if (!isFullState()) {
+			throw new IllegalStateException("Only full player states can be serialized");
+		}
+		
+		writeContents(contents, writer);
+		writeContents(enderChestContents, writer);
+		writer.writeVarInt(heldItemSlot);
+		writer.writeVarInt(level);
+		writer.writeFloat(exp);
+		writer.writeVarInt(totalExperience);
+		writer.writeFloat((float)health);
+		writer.writeVarInt(foodLevel);
+		writer.writeFloat(saturation);
+		writer.writeFloat(exhaustion);
+		writer.writeVarInt(potionEffects.size());
+		
+		for (final PotionEffect potionEffect : potionEffects) {
+			int flags = 0;
+			if (potionEffect.isAmbient()) {
+				flags |= FLAG_AMBIENT;
+			}
+			if (potionEffect.hasParticles()) {
+				flags |= FLAG_PARTICLES;
+			}
+			if (potionEffect.hasIcon()) {
+				flags |= FLAG_ICON;
+			}
+			
+			writer.writeString(potionEffect.getType().getName());
+			writer.writeVarInt(potionEffect.getDuration());
+			writer.writeVarInt(potionEffect.getAmplifier());
+			writer.writeByte(flags);
+		}
+	}
+	
+	/**
+	 * Constructs a player state out of compact data,
+	 * possibly with custom items contained by the
+	 * specified inventory saver.
+	 * 
+	 * @param reader Reader of the compact data
+	 * @param inventorySaver the InventorySaver instance which contains custom items
+	 * @return The deserialized player state
+	 */
+	public static PlayerState deserialize(CompactReader reader, InventorySaver inventorySaver) {
+		final ItemStack[] contents = readContents(reader, inventorySaver);
+		final ItemStack[] enderChestContents = readContents(reader, inventorySaver);
+		final int heldItemSlot = reader.readVarInt();
+		final int level = reader.readVarInt();
+		final float exp = reader.readFloat();
+		final int totalExperience = reader.readVarInt();
+		final float health = reader.readFloat();
+		final int foodLevel = reader.readVarInt();
+		final float saturation = reader.readFloat();
+		final float exhaustion = reader.readFloat();
+		final int potionEffectCount = reader.readVarInt();
+		final List<PotionEffect> potionEffects = new ArrayList<>(potionEffectCount);
+		
+		for (int i = 0; i < potionEffectCount; i++) {
+			final PotionEffectType type = PotionEffectType.getByName(reader.readString());
+			final int duration = reader.readVarInt();
+			final int amplifier = reader.readVarInt();
+			final int flags = reader.readByte();
+			
+			// Skip effects which don't exist on this server version
+			if (type != null) {
+				potionEffects.add(new PotionEffect(type, duration, amplifier, (flags & FLAG_AMBIENT) != 0, (flags & FLAG_PARTICLES) != 0, (flags & FLAG_ICON) != 0));
+			}
+		}
+		
+		return new PlayerState(contents, enderChestContents, heldItemSlot, level, exp, totalExperience, health, foodLevel, saturation, exhaustion, potionEffects);
+	}
+	
+	private static void writeContents(ItemStack[] contents, CompactWriter writer) {
+		writer.writeVarInt(contents.length);
+		
+		for (final ItemStack item : contents) {
+			SavedItem.serialize(item, writer);
+		}
+	}
+	
+	private static ItemStack[] readContents(CompactReader reader, InventorySaver inventorySaver) {
+		final ItemStack[] contents = new ItemStack[reader.readVarInt()];
+		
+		for (int i = 0; i < contents.length; i++) {
+			contents[i] = SavedItem.deserialize(reader, inventorySaver);
+		}
+		
+		return contents;
+	}
+}
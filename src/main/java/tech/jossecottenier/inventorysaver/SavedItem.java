@@ -1,16 +1,43 @@
 package tech.jossecottenier.inventorysaver;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.bukkit.Bukkit;
 import org.bukkit.Material;
-import org.bukkit.NamespacedKey;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Container;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
 import org.bukkit.inventory.meta.Damageable;
 import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.meta.Repairable;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
 
 public class SavedItem {
+	// Flags of an item in compact data, an empty slot has no flags
+	private static final int FLAG_PRESENT = 0x80;
+	private static final int FLAG_NAME = 0x01;
+	private static final int FLAG_DAMAGE = 0x02;
+	private static final int FLAG_ENCHANTMENTS = 0x04;
+	private static final int FLAG_CUSTOM_ITEM_KEY = 0x08;
+	private static final int FLAG_FULL_META = 0x10;
+	private static final int FLAG_CONTAINER = 0x20;
+	// Refers to an equal item which was written before, instead of any other flags
+	private static final int FLAG_REFERENCE = 0x40;
+	
+	// Class of the meta of items without special properties, e.g. stone or swords
+	private static volatile Class<?> simpleMetaClass;
+	
 	private final ItemStack item;
 	
 	public SavedItem(ItemStack item) {
@@ -27,69 +54,201 @@ public class SavedItem {
 	 * @return Deserialized item
 	 */
 	public static ItemStack deserialize(String string, InventorySaver inventorySaver) {
-		if (string.equals("")) {
+		return deserialize(new ItemStringReader(string), inventorySaver);
+	}
+	
+	/**
+	 * Constructs an ItemStack, possibly of a custom
+	 * item contained by the specified inventory saver,
+	 * out of the next item string in a single pass.
+	 * The reader is left at the separator after the item.
+	 * 
+	 * @param reader Reader positioned at the start of an item string
+	 * @param inventorySaver the InventorySaver instance which contains custom items
+	 * @return Deserialized item, null for empty slots
+	 */
+	public static ItemStack deserialize(ItemStringReader reader, InventorySaver inventorySaver) {
+		if (reader.atItemEnd()) {
 			return null;
 		}
 		
-		final Map<String, String> arguments = new HashMap<>();
+		reader.expect("m=");
+		final Material material = reader.readMaterial();
+		reader.expect(",a=");
+		final int amount = reader.readInt();
+		// Reading the name up to the next argument as it may contain commas itself
+		reader.expect(",n=");
+		final String displayName = reader.readUntil(",d=");
+		reader.expect(",d=");
+		final int damage = reader.readInt();
+		// Only allocated for enchanted items, most items in an inventory have none
+		Map<Enchantment,Integer> enchantments = null;
+		ItemMeta fullMeta = null;
+		boolean hasArgument = reader.skip(',');
+		
+		if (hasArgument && reader.skip("b=")) {
+			fullMeta = deserializeMeta(Base64.getDecoder().decode(reader.readArgument()));
+			hasArgument = reader.skip(',');
+		}
 		
-		final String[] argumentStrings = string.split(",");
-		for (String argumentString : argumentStrings) {
-			final String[] keyValuePair = argumentString.split("=");
-			final String key = keyValuePair[0];
-			String value;
+		if (hasArgument) {
+			reader.expect("e=");
 			
-			if (keyValuePair.length > 1) {
-				value = keyValuePair[1];
-			} else {
-				value = null;
+			while (!reader.atItemEnd()) {
+				final Enchantment enchantment = reader.readEnchantment();
+				final int level = reader.readInt();
+				
+				// Skip enchantments which don't exist on this server version
+				if (enchantment != null) {
+					if (enchantments == null) {
+						enchantments = new HashMap<>(4);
+					}
+					enchantments.put(enchantment, level);
+				}
+				
+				// Older versions separated enchantments by commas
+				if (!reader.skip(';')) {
+					reader.skip(',');
+				}
 			}
-			
-			arguments.put(key, value);
 		}
 		
-		final Material material = Material.valueOf(arguments.get("m"));
-		final int amount = Integer.valueOf(arguments.get("a"));
-		final String displayName = arguments.get("n");
-		final int damage = Integer.valueOf(arguments.get("d"));
-		final Map<Enchantment,Integer> enchantments = new HashMap<>();
+		return construct(material, amount, displayName, null, damage, enchantments, fullMeta, inventorySaver);
+	}
+	
+	/**
+	 * Constructs an ItemStack out of its deserialized properties,
+	 * or returns the custom item contained by the specified
+	 * inventory saver which key or name matches. Plain items
+	 * never get meta, and the meta of other items is cloned
+	 * and applied only once.
+	 * 
+	 * @param material Material of the item
+	 * @param amount Amount of items in the stack
+	 * @param displayName Display name of the item, null if it has none
+	 * @param customItemKey Stable custom item key of the item, null if it has none
+	 * @param damage Damage of the item
+	 * @param enchantments Enchantments of the item with their levels, null if it has none
+	 * @param fullMeta Full meta of the item, which replaces the other properties, null if it has none
+	 * @param inventorySaver the InventorySaver instance which contains custom items
+	 * @return Constructed item
+	 */
+	private static ItemStack construct(Material material, int amount, String displayName, String customItemKey, int damage, Map<Enchantment,Integer> enchantments, ItemMeta fullMeta, InventorySaver inventorySaver) {
+		final boolean named = displayName != null && !displayName.isEmpty() && !displayName.equals("null");
 		
 		if (inventorySaver != null) {
-			final ItemStack customItem = inventorySaver.getCustomItem(displayName);
+			ItemStack customItem = inventorySaver.getCustomItemByKey(customItemKey);
+			
+			// Unnamed items would otherwise all match a custom item without a name
+			if (customItem == null && named) {
+				customItem = inventorySaver.getCustomItem(displayName);
+			}
 			
 			if (customItem != null) {
 				return customItem;
 			}
 		}
 		
-		final String enchantmentsString = arguments.get("e");
-		String[] enchantmentKeyIdPairs = new String[0];
+		final ItemStack constructedItemStack = new ItemStack(material, amount);
 		
-		if (enchantmentsString != null) {
-			enchantmentKeyIdPairs = enchantmentsString.split(":");
+		if (fullMeta != null) {
+			constructedItemStack.setItemMeta(fullMeta);
+			return constructedItemStack;
 		}
 		
-		for (final String keyIdPair : enchantmentKeyIdPairs) {
-			final String[] segments = keyIdPair.split(":");
-			final Enchantment enchantment = Enchantment.getByKey(NamespacedKey.minecraft(segments[0]));
-			final int level = Integer.valueOf(segments[1]);
-			
-			enchantments.put(enchantment, level);
+		// getItemMeta clones the meta, which plain items like stone or dirt don't need at all
+		if (!named && damage == 0 && enchantments == null) {
+			return constructedItemStack;
 		}
 		
-		final ItemStack constructedItemStack = new ItemStack(material, amount);
 		final ItemMeta meta = constructedItemStack.getItemMeta();
 		
-		if (displayName != null && !displayName.equals("null")) {
+		if (named) {
 			meta.setDisplayName(displayName);
 		}
-		((Damageable)meta).setDamage(damage);
+		if (damage != 0 && meta instanceof Damageable) {
+			((Damageable)meta).setDamage(damage);
+		}
+		if (enchantments != null) {
+			// Enchanting the meta directly, the item would clone and apply its meta again for every enchantment
+			for (final Map.Entry<Enchantment,Integer> enchantment : enchantments.entrySet()) {
+				meta.addEnchant(enchantment.getKey(), enchantment.getValue(), true);
+			}
+		}
 		constructedItemStack.setItemMeta(meta);
-		constructedItemStack.addEnchantments(enchantments);
 		
 		return constructedItemStack;
 	}
 	
+	/**
+	 * Constructs an ItemStack, possibly of a custom
+	 * item contained by the specified inventory saver,
+	 * out of the next item in compact data. The contents
+	 * of containers like shulker boxes are read as well,
+	 * and items which refer to an equal item read before
+	 * are cloned from it.
+	 * 
+	 * @param reader Reader of the compact data
+	 * @param inventorySaver the InventorySaver instance which contains custom items
+	 * @return Deserialized item, null for empty slots
+	 */
+	public static ItemStack deserialize(CompactReader reader, InventorySaver inventorySaver) {
+		final int flags = reader.readByte();
+		
+		if (flags == 0) {
+			return null;
+		}
+		
+		if ((flags & FLAG_REFERENCE) != 0) {
+			final ItemStack referencedItem = reader.getItem(reader.readVarInt());
+			
+			return referencedItem == null ? null : referencedItem.clone();
+		}
+		
+		final Material material = reader.readMaterial();
+		final int amount = reader.readVarInt();
+		final String displayName = (flags & FLAG_NAME) != 0 ? reader.readString() : null;
+		final String customItemKey = (flags & FLAG_CUSTOM_ITEM_KEY) != 0 ? reader.readString() : null;
+		final int damage = (flags & FLAG_DAMAGE) != 0 ? reader.readVarInt() : 0;
+		Map<Enchantment,Integer> enchantments = null;
+		
+		if ((flags & FLAG_ENCHANTMENTS) != 0) {
+			final int enchantmentCount = reader.readVarInt();
+			enchantments = new HashMap<>(enchantmentCount * 2);
+			
+			for (int i = 0; i < enchantmentCount; i++) {
+				final Enchantment enchantment = reader.readEnchantment();
+				final int level = reader.readVarInt();
+				
+				// Skip enchantments which don't exist on this server version
+				if (enchantment != null) {
+					enchantments.put(enchantment, level);
+				}
+			}
+		}
+		
+		final ItemMeta fullMeta = (flags & FLAG_FULL_META) != 0 ? deserializeMeta(reader.readBytes()) : null;
+		ItemStack[] containerContents = null;
+		
+		if ((flags & FLAG_CONTAINER) != 0) {
+			containerContents = new ItemStack[reader.readVarInt()];
+			
+			for (int i = 0; i < containerContents.length; i++) {
+				containerContents[i] = deserialize(reader, inventorySaver);
+			}
+		}
+		
+		// Null if the material doesn't exist on this server version, but still registered so the IDs of later items match
+		ItemStack item = material == null ? null : construct(material, amount, displayName, customItemKey, damage, enchantments, fullMeta, inventorySaver);
+		
+		if (item != null && containerContents != null) {
+			item = withContainerContents(item, containerContents);
+		}
+		reader.addItem(item);
+		
+		return item;
+	}
+	
 	/**
 	 * Constructs an ItemStack out of a serialized
 	 * item string.
@@ -109,30 +268,417 @@ public class SavedItem {
 	 * @return The serialized item string.
 	 */
 	public String serialize() {
+		final StringBuilder serialization = new StringBuilder(64);
+		serialize(item, serialization);
+		
+		return serialization.toString();
+	}
+	
+	/**
+	 * Appends the item string of the ItemStack passed
+	 * in its constructor to a specified Appendable.
+	 * 
+	 * @param out Appendable to which the item string is appended
+	 * @throws IOException If appending fails
+	 */
+	public void serialize(Appendable out) throws IOException {
+		serialize(item, out);
+	}
+	
+	/**
+	 * Appends the item string of a specified item to a
+	 * StringBuilder without creating intermediate strings.
+	 * 
+	 * @param item Item to serialize, null for an empty slot
+	 * @param out StringBuilder to which the item string is appended
+	 */
+	public static void serialize(ItemStack item, StringBuilder out) {
+		try {
+			serialize(item, (Appendable)out);
+		} catch (IOException e) {
+			// Appending to a StringBuilder never fails
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Appends the item string of a specified item to an
+	 * Appendable without creating intermediate strings.
+	 * 
+	 * @param item Item to serialize, null for an empty slot
+	 * @param out Appendable to which the item string is appended
+	 * @throws IOException If appending fails
+	 */
+	public static void serialize(ItemStack item, Appendable out) throws IOException {
 		if (item == null) {
-			return "";
+			return;
 		}
 		
 		final ItemMeta meta = item.getItemMeta();
+		appendProperties(out, item.getType().name(), item.getAmount(), meta.getDisplayName(), ((Damageable)meta).getDamage());
+		
+		// The other properties stay readable and serve as a fallback if the full meta can't be loaded
+		if (item.hasItemMeta() && needsFullMeta(item.getType(), meta)) {
+			out.append(",b=").append(Base64.getEncoder().encodeToString(serializeMeta(meta)));
+		}
+		out.append(",e=");
+		
+		// Separating enchantments by semicolons as commas separate the arguments
+		boolean first = true;
+		for (final Map.Entry<Enchantment,Integer> enchantment : item.getEnchantments().entrySet()) {
+			if (!first) {
+				out.append(';');
+			}
+			out.append(enchantment.getKey().getKey().getKey()).append(':');
+			appendInt(out, enchantment.getValue());
+			first = false;
+		}
+	}
+	
+	/**
+	 * Returns the item string of an item without meta the
+	 * way serialize writes it, without needing a server to
+	 * create the item.
+	 * 
+	 * @param materialName Name of the item's material
+	 * @param amount Amount of items in the stack
+	 * @return The item string
+	 */
+	protected static String serializePlain(String materialName, int amount) {
+		final StringBuilder serialization = new StringBuilder(48);
+		
+		try {
+			appendProperties(serialization, materialName, amount, null, 0);
+		} catch (IOException e) {
+			// Appending to a StringBuilder never fails
+			throw new UncheckedIOException(e);
+		}
+		serialization.append(",e=");
+		
+		return serialization.toString();
+	}
+	
+	private static void appendProperties(Appendable out, String materialName, int amount, String displayName, int damage) throws IOException {
+		out.append("m=").append(materialName);
+		out.append(",a=");
+		appendInt(out, amount);
+		out.append(",n=").append(displayName);
+		out.append(",d=");
+		appendInt(out, damage);
+	}
+	
+	private static void appendInt(Appendable out, int value) throws IOException {
+		if (out instanceof StringBuilder) {
+			((StringBuilder)out).append(value);
+			return;
+		}
+		
+		if (value < 0) {
+			out.append('-');
+			value = -value;
+		}
+		
+		int divisor = 1;
+		while (value / divisor >= 10) {
+			divisor *= 10;
+		}
+		
+		for (; divisor > 0; divisor /= 10) {
+			out.append((char)('0' + (value / divisor) % 10));
+		}
+	}
+	
+	/**
+	 * Serializes the ItemStack passed in its
+	 * constructor to compact data.
+	 * 
+	 * @param writer Writer of the compact data
+	 */
+	public void serialize(CompactWriter writer) {
+		serialize(item, writer);
+	}
+	
+	/**
+	 * Serializes a specified item to compact data. The
+	 * contents of containers like shulker boxes are written
+	 * item by item, and items with meta which are equal to
+	 * an item written before by the same writer only refer
+	 * to it, so e.g. identical shulker boxes are written once.
+	 * 
+	 * @param item Item to serialize, null for an empty slot
+	 * @param writer Writer of the compact data
+	 */
+	public static void serialize(ItemStack item, CompactWriter writer) {
+		if (item == null || item.getType() == Material.AIR) {
+			writer.writeByte(0);
+			return;
+		}
+		
+		final boolean hasMeta = item.hasItemMeta();
 		
-		final Material material = item.getType();
-		final int amount = item.getAmount();
-		final String displayName = meta.getDisplayName();
-		final int damage = ((Damageable)meta).getDamage();
+		if (hasMeta) {
+			final int itemId = writer.getItemId(item);
+			
+			if (itemId >= 0) {
+				writer.writeByte(FLAG_PRESENT | FLAG_REFERENCE);
+				writer.writeVarInt(itemId);
+				return;
+			}
+		}
+		
+		final ItemMeta meta = item.getItemMeta();
+		final String displayName = meta != null && meta.hasDisplayName() ? meta.getDisplayName() : null;
+		final String customItemKey = meta != null ? CustomItemRegistry.getKey(meta) : null;
+		final int damage = meta instanceof Damageable ? ((Damageable)meta).getDamage() : 0;
 		final Map<Enchantment,Integer> enchantments = item.getEnchantments();
+		final ItemStack[] containerContents = hasMeta ? getContainerContents(meta) : null;
+		// The contents are written item by item, so they're left out of the full meta
+		final ItemMeta savedMeta = containerContents == null ? meta : withoutContainerContents(meta);
+		final byte[] fullMeta = hasMeta && needsFullMeta(item.getType(), savedMeta) ? serializeMeta(savedMeta) : null;
+		
+		int flags = FLAG_PRESENT;
+		if (displayName != null) {
+			flags |= FLAG_NAME;
+		}
+		if (customItemKey != null) {
+			flags |= FLAG_CUSTOM_ITEM_KEY;
+		}
+		if (damage != 0) {
+			flags |= FLAG_DAMAGE;
+		}
+		if (!enchantments.isEmpty()) {
+			flags |= FLAG_ENCHANTMENTS;
+		}
+		if (fullMeta != null) {
+			flags |= FLAG_FULL_META;
+		}
+		if (containerContents != null) {
+			flags |= FLAG_CONTAINER;
+		}
+		
+		writer.writeByte(flags);
+		writer.writeMaterial(item.getType());
+		writer.writeVarInt(item.getAmount());
+		
+		if (displayName != null) {
+			writer.writeString(displayName);
+		}
+		if (customItemKey != null) {
+			writer.writeString(customItemKey);
+		}
+		if (damage != 0) {
+			writer.writeVarInt(damage);
+		}
+		if (!enchantments.isEmpty()) {
+			writer.writeVarInt(enchantments.size());
+			
+			for (final Map.Entry<Enchantment,Integer> enchantment : enchantments.entrySet()) {
+				writer.writeEnchantment(enchantment.getKey());
+				writer.writeVarInt(enchantment.getValue());
+			}
+		}
+		if (fullMeta != null) {
+			writer.writeBytes(fullMeta);
+		}
+		if (containerContents != null) {
+			writer.writeVarInt(containerContents.length);
+			
+			for (final ItemStack containedItem : containerContents) {
+				serialize(containedItem, writer);
+			}
+		}
 		
-		String enchantmentsString = "";
+		writer.addItem(item, hasMeta);
+	}
+	
+	/**
+	 * Returns the contents of a container item, such as a
+	 * shulker box.
+	 * 
+	 * @param meta Meta of the item
+	 * @return The contents, or null if the item isn't a container or is empty
+	 */
+	private static ItemStack[] getContainerContents(ItemMeta meta) {
+		if (!(meta instanceof BlockStateMeta) || !((BlockStateMeta)meta).hasBlockState()) {
+			return null;
+		}
+		
+		final BlockState state = ((BlockStateMeta)meta).getBlockState();
+		
+		if (!(state instanceof Container)) {
+			return null;
+		}
+		
+		final ItemStack[] contents = ((Container)state).getSnapshotInventory().getContents();
+		
+		for (final ItemStack containedItem : contents) {
+			if (containedItem != null) {
+				return contents;
+			}
+		}
 		
-		for (final Enchantment enchantment : enchantments.keySet()) {
-			enchantmentsString += String.format("%s:%d,", enchantment.getKey().getKey(), item.getEnchantmentLevel(enchantment));
+		return null;
+	}
+	
+	/**
+	 * Returns a copy of the meta of a container item
+	 * without its contents.
+	 * 
+	 * @param meta Meta of the item
+	 * @return Meta without contents, or the meta itself if the item isn't a container
+	 */
+	private static ItemMeta withoutContainerContents(ItemMeta meta) {
+		if (!(meta instanceof BlockStateMeta)) {
+			return meta;
 		}
 		
-		// Remove last index (ending comma)
-		if (enchantmentsString.length() > 2) {
-			enchantmentsString = enchantmentsString.substring(0, enchantmentsString.length() - 2);
+		final BlockStateMeta metaWithoutContents = (BlockStateMeta)meta.clone();
+		final BlockState state = metaWithoutContents.getBlockState();
+		
+		if (!(state instanceof Container)) {
+			return meta;
 		}
 		
-		return String.format("m=%s,a=%d,n=%s,d=%d,e=%s", material.name(), amount, displayName, damage, enchantmentsString);
+		((Container)state).getSnapshotInventory().clear();
+		metaWithoutContents.setBlockState(state);
+		
+		return metaWithoutContents;
+	}
+	
+	/**
+	 * Returns a copy of a container item with the
+	 * specified contents.
+	 * 
+	 * @param item The container item, which is left as it is
+	 * @param contents Contents of the container
+	 * @return Copy of the item with the contents
+	 */
+	private static ItemStack withContainerContents(ItemStack item, ItemStack[] contents) {
+		final ItemStack itemWithContents = item.clone();
+		final ItemMeta meta = itemWithContents.getItemMeta();
+		
+		if (meta instanceof BlockStateMeta) {
+			final BlockState state = ((BlockStateMeta)meta).getBlockState();
+			
+			if (state instanceof Container) {
+				((Container)state).getSnapshotInventory().setContents(contents);
+				((BlockStateMeta)meta).setBlockState(state);
+				itemWithContents.setItemMeta(meta);
+			}
+		}
+		
+		return itemWithContents;
+	}
+	
+	/**
+	 * Returns whether an item's meta holds more than its name,
+	 * damage, enchantments and custom item key, such as lore,
+	 * attributes, persistent data or the properties of books,
+	 * banners, potions and shulker boxes. Only such items are
+	 * saved with their full meta.
+	 * 
+	 * @param material Material of the item
+	 * @param meta Meta of the item
+	 * @return Whether the meta needs to be saved as a whole
+	 */
+	private static boolean needsFullMeta(Material material, ItemMeta meta) {
+		if (simpleMetaClass == null) {
+			simpleMetaClass = Bukkit.getItemFactory().getItemMeta(Material.STONE).getClass();
+		}
+		
+		// Metas with properties of their own, like books and banners, have a class of their own and only count if those are set
+		if (meta.getClass() != simpleMetaClass) {
+			return !meta.equals(createSimpleMeta(material, meta));
+		}
+		
+		if (meta.hasLore() || meta.hasCustomModelData() || meta.hasAttributeModifiers() || meta.hasLocalizedName() || meta.isUnbreakable() || !meta.getItemFlags().isEmpty()) {
+			return true;
+		}
+		
+		if (meta instanceof Repairable && ((Repairable)meta).hasRepairCost()) {
+			return true;
+		}
+		
+		final PersistentDataContainer container = meta.getPersistentDataContainer();
+		
+		if (container.isEmpty()) {
+			return false;
+		}
+		
+		if (CustomItemRegistry.getKey(meta) == null) {
+			return true;
+		}
+		
+		// The custom item key is saved by itself, so only other persistent data counts
+		final ItemMeta metaWithoutKey = meta.clone();
+		metaWithoutKey.getPersistentDataContainer().remove(CustomItemRegistry.CUSTOM_ITEM_KEY);
+		
+		return !metaWithoutKey.getPersistentDataContainer().isEmpty();
+	}
+	
+	/**
+	 * Creates a new meta for a material which only has the
+	 * name, damage, enchantments and custom item key of
+	 * another meta, and no container contents.
+	 * 
+	 * @param material Material of the item
+	 * @param meta Meta of which the properties are copied
+	 * @return The new meta
+	 */
+	private static ItemMeta createSimpleMeta(Material material, ItemMeta meta) {
+		final ItemMeta simpleMeta = withoutContainerContents(Bukkit.getItemFactory().getItemMeta(material));
+		final String customItemKey = CustomItemRegistry.getKey(meta);
+		
+		if (meta.hasDisplayName()) {
+			simpleMeta.setDisplayName(meta.getDisplayName());
+		}
+		if (meta instanceof Damageable && simpleMeta instanceof Damageable) {
+			((Damageable)simpleMeta).setDamage(((Damageable)meta).getDamage());
+		}
+		for (final Map.Entry<Enchantment,Integer> enchantment : meta.getEnchants().entrySet()) {
+			simpleMeta.addEnchant(enchantment.getKey(), enchantment.getValue(), true);
+		}
+		if (customItemKey != null) {
+			simpleMeta.getPersistentDataContainer().set(CustomItemRegistry.CUSTOM_ITEM_KEY, PersistentDataType.STRING, customItemKey);
+		}
+		
+		return simpleMeta;
+	}
+	
+	/**
+	 * Serializes the full meta of an item with Bukkit's
+	 * own serialization, so nothing of it gets lost.
+	 * 
+	 * @param meta Meta of the item
+	 * @return The serialized meta
+	 */
+	private static byte[] serializeMeta(ItemMeta meta) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		
+		try (final BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+			out.writeObject(meta);
+		} catch (IOException e) {
+			// Writing to a byte array never fails
+			throw new UncheckedIOException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Deserializes the full meta of an item.
+	 * 
+	 * @param data The serialized meta
+	 * @return The meta, or null if it could not be deserialized
+	 */
+	private static ItemMeta deserializeMeta(byte[] data) {
+		try (final BukkitObjectInputStream in = new BukkitObjectInputStream(new ByteArrayInputStream(data))) {
+			return (ItemMeta)in.readObject();
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			// The item is constructed out of its other properties instead
+			e.printStackTrace();
+			return null;
+		}
 	}
 	
 	@Override
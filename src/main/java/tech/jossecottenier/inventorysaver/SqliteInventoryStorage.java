@@ -0,0 +1,134 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.UUID;
+
+public class SqliteInventoryStorage implements InventoryStorage {
+	public static final String FILE_NAME = "inventories.db";
+	
+	// SQLite only allows one writer at a time, while readers aren't blocked by it in WAL mode
+	private final Connection writeConnection;
+	private final Connection readConnection;
+	private final PreparedStatement saveStatement;
+	private final PreparedStatement loadStatement;
+	
+	/**
+	 * Opens the SQLite database of a plugin, creating it
+	 * if it doesn't exist yet.
+	 * 
+	 * @param dataFolder Folder in which the database is stored
+	 * @throws IOException If the database could not be opened
+	 */
+	public SqliteInventoryStorage(File dataFolder) throws IOException {
+		final String url = "jdbc:sqlite:" + new File(dataFolder, FILE_NAME).getAbsolutePath();
+		dataFolder.mkdirs();
+		
+		try {
+			this.writeConnection = DriverManager.getConnection(url);
+			
+			try (final Statement statement = writeConnection.createStatement()) {
+				statement.execute("PRAGMA journal_mode=WAL");
+				statement.execute("PRAGMA synchronous=NORMAL");
+				statement.execute("CREATE TABLE IF NOT EXISTS inventories ("
+						+ "world TEXT NOT NULL, "
+						+ "uuid TEXT NOT NULL, "
+						+ "name TEXT, "
+						+ "inventory TEXT NOT NULL, "
+						+ "PRIMARY KEY (world, uuid))");
+			}
+			
+			this.readConnection = DriverManager.getConnection(url);
+			this.saveStatement = writeConnection.prepareStatement("INSERT OR REPLACE INTO inventories (world, uuid, name, inventory) VALUES (?, ?, ?, ?)");
+			this.loadStatement = readConnection.prepareStatement("SELECT name, inventory FROM inventories WHERE world = ? AND uuid = ?");
+		} catch (SQLException e) {
+			throw new IOException(String.format("Could not open %s", url), e);
+		}
+	}
+	
+	/**
+	 * Looks up a player's inventory through the
+	 * (world, uuid) primary key index.
+	 */
+	@Override
+	public StoredInventory load(File folder, UUID uuid) throws IOException {
+		synchronized (readConnection) {
+			try {
+				loadStatement.setString(1, folder.getName());
+				loadStatement.setString(2, uuid.toString());
+				
+				try (final ResultSet result = loadStatement.executeQuery()) {
+					return result.next() ? new StoredInventory(uuid, result.getString("name"), result.getString("inventory")) : null;
+				}
+			} catch (SQLException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the inventories in a single batched
+	 * transaction.
+	 */
+	@Override
+	public void save(File folder, Collection<StoredInventory> inventories) throws IOException {
+		synchronized (writeConnection) {
+			long writtenBytes = 0;
+			
+			try {
+				writeConnection.setAutoCommit(false);
+				
+				for (final StoredInventory inventory : inventories) {
+					writtenBytes += inventory.getInventory() == null ? 0 : inventory.getInventory().getBytes(StandardCharsets.UTF_8).length;
+					saveStatement.setString(1, folder.getName());
+					saveStatement.setString(2, inventory.getUuid().toString());
+					saveStatement.setString(3, inventory.getName());
+					saveStatement.setString(4, inventory.getInventory());
+					saveStatement.addBatch();
+				}
+				
+				saveStatement.executeBatch();
+				writeConnection.commit();
+				InventoryMetrics.getInstance().add(InventoryMetrics.Counter.BYTES_WRITTEN, writtenBytes);
+			} catch (SQLException e) {
+				try {
+					saveStatement.clearBatch();
+					writeConnection.rollback();
+				} catch (SQLException rollbackException) {
+					e.addSuppressed(rollbackException);
+				}
+				
+				throw new IOException(e);
+			} finally {
+				try {
+					writeConnection.setAutoCommit(true);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			synchronized (readConnection) {
+				readConnection.close();
+			}
+			
+			synchronized (writeConnection) {
+				writeConnection.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+}
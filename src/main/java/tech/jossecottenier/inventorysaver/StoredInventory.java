@@ -0,0 +1,44 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.util.UUID;
+
+public class StoredInventory {
+	private final UUID uuid;
+	private final String name;
+	private final String inventory;
+	
+	public StoredInventory(UUID uuid, String name, String inventory) {
+		this.uuid = uuid;
+		this.name = name;
+		this.inventory = inventory;
+	}
+	
+	/**
+	 * Getter for the UUID of the player
+	 * which inventory this is.
+	 * 
+	 * @return UUID of the player
+	 */
+	public UUID getUuid() {
+		return uuid;
+	}
+	
+	/**
+	 * Getter for the name of the player at
+	 * the time the inventory was saved.
+	 * 
+	 * @return Name of the player, null if it's unknown
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Getter for the serialized inventory.
+	 * 
+	 * @return The serialized inventory
+	 */
+	public String getInventory() {
+		return inventory;
+	}
+}
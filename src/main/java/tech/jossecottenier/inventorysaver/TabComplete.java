@@ -10,7 +10,7 @@ public class TabComplete implements TabCompleter {
 	public List<String> onTabComplete(CommandSender sender, Command cmd, String label, String[] args) {
 		if (label.equalsIgnoreCase("inventory")) {
 			if (args.length == 1) {
-				return List.of("save", "load");
+				return List.of("save", "load", "saveall", "stats", "migrate");
 			}
 		}
 		
@@ -0,0 +1,514 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class WorldInventoryCache {
+	private static WorldInventoryCache instance;
+	
+	private final Map<File,CachedWorld> worlds;
+	private int maxWorlds;
+	private volatile InventoryStorage storage;
+	
+	public WorldInventoryCache(int maxWorlds, InventoryStorage storage) {
+		// Access ordered so the least recently used world is evicted first
+		this.worlds = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxWorlds = maxWorlds;
+		this.storage = storage;
+	}
+	
+	public WorldInventoryCache(int maxWorlds) {
+		this(maxWorlds, new YamlInventoryStorage());
+	}
+	
+	/**
+	 * Getter for the cache shared by all InventorySaver
+	 * instances. A new cache is created if the previous
+	 * one has been shut down.
+	 * 
+	 * @return The shared world inventory cache
+	 */
+	public static synchronized WorldInventoryCache getInstance() {
+		if (instance == null) {
+			instance = new WorldInventoryCache(16);
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Queues all unsaved entries of the shared cache to be
+	 * written and compacted, closes its storage afterwards
+	 * and drops the cache, if there is one.
+	 */
+	protected static synchronized void shutdownInstance() {
+		if (instance != null) {
+			instance.flush();
+			instance.compact();
+			instance.close();
+			instance = null;
+		}
+	}
+	
+	/**
+	 * Gets the file in a world's inventory folder in which
+	 * the inventory of a specified player is stored by the
+	 * YML storage. Pending saves are also tracked by this
+	 * file, whichever storage is used.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @return The player's inventory file
+	 */
+	public static File getPlayerFile(File folder, UUID uuid) {
+		return new File(folder, uuid + ".yml");
+	}
+	
+	/**
+	 * Sets the amount of worlds which inventories
+	 * are kept in memory. Worlds with unsaved entries
+	 * are only evicted after they have been written.
+	 * 
+	 * @param maxWorlds Maximum amount of cached worlds
+	 */
+	public void setMaxWorlds(int maxWorlds) {
+		synchronized (worlds) {
+			this.maxWorlds = maxWorlds;
+		}
+	}
+	
+	/**
+	 * Getter for the storage in which the cached
+	 * inventories are saved.
+	 * 
+	 * @return The inventory storage
+	 */
+	public InventoryStorage getStorage() {
+		return storage;
+	}
+	
+	/**
+	 * Sets the storage in which the cached inventories are
+	 * saved. Saves aren't moved between storages, so this
+	 * should be set before any inventories are cached.
+	 * 
+	 * @param storage The new inventory storage
+	 */
+	public void setStorage(InventoryStorage storage) {
+		this.storage = storage;
+	}
+	
+	/**
+	 * Returns the cached inventories of a world, creating
+	 * a cache for the world if there is none yet.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @return The cached world
+	 */
+	private CachedWorld getCachedWorld(File folder) {
+		synchronized (worlds) {
+			CachedWorld cachedWorld = worlds.get(folder);
+			
+			if (cachedWorld == null) {
+				// Make room first so the new world itself can't be evicted
+				evictOverflow(maxWorlds - 1);
+				cachedWorld = new CachedWorld();
+				worlds.put(folder, cachedWorld);
+			}
+			
+			return cachedWorld;
+		}
+	}
+	
+	/**
+	 * Gets a player's serialized inventory in a world,
+	 * serving it from memory once it has been loaded
+	 * from the storage. The storage is read without holding
+	 * any lock, so if inventories of the world were evicted
+	 * in the meantime, the read may predate a newer save
+	 * which was written and evicted, and is done again.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @return The serialized inventory, or null if there is none
+	 */
+	public String get(File folder, UUID uuid) {
+		PlayerEntry entry = null;
+		
+		while (entry == null) {
+			final CachedWorld cachedWorld = getCachedWorld(folder);
+			entry = cachedWorld.entries.get(uuid);
+			
+			if (entry != null) {
+				InventoryMetrics.getInstance().increment(InventoryMetrics.Counter.CACHE_HITS);
+				break;
+			}
+			
+			final long evictions = cachedWorld.getEvictions();
+			final StoredInventory storedInventory;
+			final long startTime = System.nanoTime();
+			InventoryMetrics.getInstance().increment(InventoryMetrics.Counter.CACHE_MISSES);
+			
+			try {
+				storedInventory = storage.load(folder, uuid);
+				InventoryMetrics.getInstance().record(InventoryMetrics.Operation.STORAGE_READ, startTime);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+			
+			synchronized (cachedWorld) {
+				if (cachedWorld.evictions != evictions) {
+					continue;
+				}
+				
+				// Also caching players without saved inventory so the storage isn't asked again
+				final PlayerEntry loadedEntry = storedInventory == null ? new PlayerEntry(null, null) : new PlayerEntry(storedInventory.getName(), storedInventory.getInventory());
+				final PlayerEntry previousEntry = cachedWorld.entries.putIfAbsent(uuid, loadedEntry);
+				entry = previousEntry == null ? loadedEntry : previousEntry;
+			}
+		}
+		
+		synchronized (entry) {
+			return entry.inventory;
+		}
+	}
+	
+	/**
+	 * Updates a player's serialized inventory in a world in
+	 * memory and marks it to be written on the next flush.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @param name Name of the player
+	 * @param inventory The serialized inventory
+	 * @return Future which completes once the inventory has been written
+	 */
+	public CompletableFuture<Void> put(File folder, UUID uuid, String name, String inventory) {
+		// Holding the worlds lock so the world can't get evicted before it's marked dirty
+		synchronized (worlds) {
+			final CachedWorld cachedWorld = getCachedWorld(folder);
+			
+			synchronized (cachedWorld) {
+				final PlayerEntry entry = cachedWorld.entries.computeIfAbsent(uuid, key -> new PlayerEntry(name, null));
+				
+				synchronized (entry) {
+					entry.name = name;
+					entry.inventory = inventory;
+					entry.version++;
+				}
+				
+				return cachedWorld.nextFlush;
+			}
+		}
+	}
+	
+	/**
+	 * Saves the unsaved inventories of a cached world to
+	 * the storage in a single batch. Should be run on the
+	 * I/O thread.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param cachedWorld The cached world to write
+	 */
+	private void write(File folder, CachedWorld cachedWorld) {
+		final CompletableFuture<Void> flushed;
+		
+		synchronized (cachedWorld) {
+			if (!cachedWorld.isDirty()) {
+				return;
+			}
+			
+			flushed = cachedWorld.nextFlush;
+			cachedWorld.nextFlush = new CompletableFuture<>();
+		}
+		
+		final List<StoredInventory> inventories = new ArrayList<>();
+		final Map<PlayerEntry,Long> versions = new HashMap<>();
+		
+		for (final Map.Entry<UUID,PlayerEntry> entry : cachedWorld.entries.entrySet()) {
+			final PlayerEntry playerEntry = entry.getValue();
+			
+			synchronized (playerEntry) {
+				if (playerEntry.isDirty()) {
+					inventories.add(new StoredInventory(entry.getKey(), playerEntry.name, playerEntry.inventory));
+					versions.put(playerEntry, playerEntry.version);
+				}
+			}
+		}
+		
+		final long startTime = System.nanoTime();
+		
+		try {
+			storage.save(folder, inventories);
+			InventoryMetrics.getInstance().record(InventoryMetrics.Operation.STORAGE_WRITE, startTime);
+		} catch (IOException e) {
+			flushed.completeExceptionally(e);
+			throw new UncheckedIOException(e);
+		}
+		
+		for (final Map.Entry<PlayerEntry,Long> version : versions.entrySet()) {
+			synchronized (version.getKey()) {
+				// Updates which happened while writing stay dirty
+				version.getKey().writtenVersion = version.getValue();
+			}
+		}
+		
+		flushed.complete(null);
+	}
+	
+	/**
+	 * Queues the storage to compact the saves which are
+	 * only written in a temporary form, such as the YML
+	 * storage's journals.
+	 * 
+	 * @return Future which completes once the saves have been compacted
+	 */
+	public CompletableFuture<Void> compact() {
+		return InventoryWriter.getInstance().submit(null, () -> {
+			try {
+				storage.compact();
+			} catch (IOException e) {
+				// The saves are kept in their temporary form, so nothing is lost
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	/**
+	 * Recovers the saves which were left behind in a
+	 * temporary form by the storage before the server
+	 * stopped or crashed.
+	 * 
+	 * @param dataFolder Folder in which the world inventory folders are stored
+	 * @return The amount of worlds which saves were recovered
+	 */
+	public int recover(File dataFolder) {
+		try {
+			return storage.recover(dataFolder);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+	
+	/**
+	 * Queues the storage to be closed after all
+	 * previously queued writes.
+	 * 
+	 * @return Future which completes once the storage has been closed
+	 */
+	public CompletableFuture<Void> close() {
+		return InventoryWriter.getInstance().submit(null, () -> {
+			try {
+				storage.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	/**
+	 * Queues all cached worlds with unsaved inventories
+	 * to be written.
+	 * 
+	 * @return Future which completes once all worlds have been written
+	 */
+	public CompletableFuture<Void> flush() {
+		return flush(null);
+	}
+	
+	/**
+	 * Queues all cached worlds with unsaved inventories to
+	 * be written, after which worlds without players in them
+	 * are evicted from memory, as are the written inventories
+	 * of players who aren't in the other worlds. The flush
+	 * runs on the I/O thread so it includes all saves which
+	 * were queued before it.
+	 * 
+	 * @param players UUIDs of the players in every world by world name, or null to evict nothing
+	 * @return Future which completes once all worlds have been written
+	 */
+	public CompletableFuture<Void> flush(Map<String,Set<UUID>> players) {
+		return InventoryWriter.getInstance().submit(null, () -> {
+			final Map<File,CachedWorld> cachedWorlds;
+			
+			synchronized (worlds) {
+				cachedWorlds = new LinkedHashMap<>(worlds);
+			}
+			
+			for (final Map.Entry<File,CachedWorld> entry : cachedWorlds.entrySet()) {
+				try {
+					write(entry.getKey(), entry.getValue());
+				} catch (UncheckedIOException e) {
+					// Keep writing the other worlds, this one stays dirty
+					e.printStackTrace();
+				}
+			}
+			
+			if (players != null) {
+				evictAbsent(players);
+			}
+		});
+	}
+	
+	/**
+	 * Evicts all written worlds which have no players in them,
+	 * and the written inventories of players who aren't in
+	 * the worlds which do, so worlds which are always played
+	 * in don't keep every inventory they ever loaded.
+	 * 
+	 * @param players UUIDs of the players in every world by world name
+	 */
+	private void evictAbsent(Map<String,Set<UUID>> players) {
+		synchronized (worlds) {
+			final Iterator<Map.Entry<File,CachedWorld>> iterator = worlds.entrySet().iterator();
+			
+			while (iterator.hasNext()) {
+				final Map.Entry<File,CachedWorld> entry = iterator.next();
+				final Set<UUID> presentPlayers = players.get(entry.getKey().getName());
+				
+				if (presentPlayers == null) {
+					if (!entry.getValue().isDirty()) {
+						iterator.remove();
+						entry.getValue().markEvicted();
+					}
+				} else {
+					evictAbsent(entry.getValue(), presentPlayers);
+				}
+			}
+			
+			evictOverflow(maxWorlds);
+		}
+	}
+	
+	/**
+	 * Evicts the written inventories of a world which belong
+	 * to players who aren't in it. Should be called while
+	 * holding the worlds lock, so no inventory is put in
+	 * between.
+	 * 
+	 * @param cachedWorld The cached world
+	 * @param presentPlayers UUIDs of the players in the world
+	 */
+	private static void evictAbsent(CachedWorld cachedWorld, Set<UUID> presentPlayers) {
+		synchronized (cachedWorld) {
+			final Iterator<Map.Entry<UUID,PlayerEntry>> iterator = cachedWorld.entries.entrySet().iterator();
+			
+			while (iterator.hasNext()) {
+				final Map.Entry<UUID,PlayerEntry> entry = iterator.next();
+				
+				if (!presentPlayers.contains(entry.getKey()) && !entry.getValue().isDirty()) {
+					iterator.remove();
+					cachedWorld.evictions++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used written worlds until
+	 * at most the specified amount of worlds is cached.
+	 * Should be called while holding the worlds lock.
+	 * 
+	 * @param limit Amount of worlds which may stay cached
+	 */
+	private void evictOverflow(int limit) {
+		final Iterator<CachedWorld> iterator = worlds.values().iterator();
+		
+		while (worlds.size() > limit && iterator.hasNext()) {
+			final CachedWorld cachedWorld = iterator.next();
+			
+			if (!cachedWorld.isDirty()) {
+				iterator.remove();
+				cachedWorld.markEvicted();
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether a world's inventories are currently
+	 * held in memory.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @return Whether the world is cached
+	 */
+	public boolean isCached(File folder) {
+		synchronized (worlds) {
+			return worlds.containsKey(folder);
+		}
+	}
+	
+	/**
+	 * Returns whether a player's inventory in a world is
+	 * currently held in memory.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @return Whether the inventory is cached
+	 */
+	public boolean isCached(File folder, UUID uuid) {
+		synchronized (worlds) {
+			final CachedWorld cachedWorld = worlds.get(folder);
+			
+			return cachedWorld != null && cachedWorld.entries.containsKey(uuid);
+		}
+	}
+	
+	private static class CachedWorld {
+		private final Map<UUID,PlayerEntry> entries;
+		private CompletableFuture<Void> nextFlush;
+		// Amount of times inventories of the world were evicted, so loads can tell they may be outdated
+		private long evictions;
+		
+		private CachedWorld() {
+			this.entries = new ConcurrentHashMap<>();
+			this.nextFlush = new CompletableFuture<>();
+		}
+		
+		private synchronized long getEvictions() {
+			return evictions;
+		}
+		
+		private synchronized void markEvicted() {
+			evictions++;
+		}
+		
+		private boolean isDirty() {
+			for (final PlayerEntry entry : entries.values()) {
+				if (entry.isDirty()) {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+	}
+	
+	private static class PlayerEntry {
+		private String name;
+		private String inventory;
+		private long version;
+		private long writtenVersion;
+		
+		private PlayerEntry(String name, String inventory) {
+			this.name = name;
+			this.inventory = inventory;
+		}
+		
+		private synchronized boolean isDirty() {
+			return version != writtenVersion;
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package tech.jossecottenier.inventorysaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+public class YamlInventoryStorage implements InventoryStorage {
+	// Consecutive deltas of a player after which a full record is written again
+	protected static final int MAX_DELTAS = 16;
+	
+	// Worlds which journals haven't been compacted yet
+	private final Map<File,JournaledWorld> journaledWorlds;
+	private volatile long maxJournalSize;
+	private volatile boolean itemDictionary;
+	
+	public YamlInventoryStorage(long maxJournalSize) {
+		this.journaledWorlds = new ConcurrentHashMap<>();
+		this.maxJournalSize = maxJournalSize;
+	}
+	
+	public YamlInventoryStorage() {
+		this(1 << 20);
+	}
+	
+	/**
+	 * Sets the size a world's journal may grow to before
+	 * it is compacted into the player files.
+	 * 
+	 * @param maxJournalSize Maximum size of a journal in bytes
+	 */
+	public void setMaxJournalSize(long maxJournalSize) {
+		this.maxJournalSize = maxJournalSize;
+	}
+	
+	/**
+	 * Sets whether longer items are written to a per world
+	 * item dictionary on compaction, so player files only
+	 * refer to them. Player files with references are
+	 * always loaded, whatever this is set to.
+	 * 
+	 * @param itemDictionary Whether to intern items into the item dictionary
+	 */
+	public void setItemDictionary(boolean itemDictionary) {
+		this.itemDictionary = itemDictionary;
+	}
+	
+	/**
+	 * Loads a player's latest save, which is either in the
+	 * world's journal or in the player's own file. Items
+	 * which the player file refers to are looked up in the
+	 * world's item dictionary.
+	 */
+	@Override
+	public StoredInventory load(File folder, UUID uuid) throws IOException {
+		final InventoryJournal journal = InventoryJournal.forFolder(folder);
+		
+		// Holding the journal so its saves can't be compacted, nor referenced items collected, in between
+		synchronized (journal) {
+			final StoredInventory journaledInventory = getJournaledWorld(folder, journal).inventories.get(uuid);
+			
+			if (journaledInventory != null) {
+				return journaledInventory;
+			}
+			
+			final File file = WorldInventoryCache.getPlayerFile(folder, uuid);
+			
+			if (!file.exists()) {
+				return null;
+			}
+			
+			final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+			final String inventory = configuration.getString("inventory");
+			
+			return inventory == null ? null : new StoredInventory(uuid, configuration.getString("name"), ItemDictionary.forFolder(folder).resolve(inventory));
+		}
+	}
+	
+	/**
+	 * Appends the inventories to the world's journal in a
+	 * single write, and compacts the journal once it has
+	 * grown too large. Players which already have a record
+	 * in the journal only get the slots that changed
+	 * appended.
+	 */
+	@Override
+	public void save(File folder, Collection<StoredInventory> inventories) throws IOException {
+		final InventoryJournal journal = InventoryJournal.forFolder(folder);
+		final long journalSize;
+		
+		synchronized (journal) {
+			final JournaledWorld journaledWorld = getJournaledWorld(folder, journal);
+			// Fingerprints of this batch, which are only remembered once their records are in the journal
+			final Map<UUID,Fingerprint> fingerprints = new HashMap<>();
+			final List<StoredInventory> records = new ArrayList<>(inventories.size());
+			
+			for (final StoredInventory inventory : inventories) {
+				final Fingerprint previousFingerprint = fingerprints.containsKey(inventory.getUuid()) ? fingerprints.get(inventory.getUuid()) : journaledWorld.fingerprints.get(inventory.getUuid());
+				records.add(createRecord(inventory, previousFingerprint, fingerprints));
+			}
+			
+			journalSize = journal.append(records);
+			
+			for (final Map.Entry<UUID,Fingerprint> fingerprint : fingerprints.entrySet()) {
+				if (fingerprint.getValue() == null) {
+					journaledWorld.fingerprints.remove(fingerprint.getKey());
+				} else {
+					journaledWorld.fingerprints.put(fingerprint.getKey(), fingerprint.getValue());
+				}
+			}
+			for (final StoredInventory inventory : inventories) {
+				journaledWorld.inventories.put(inventory.getUuid(), inventory);
+			}
+		}
+		
+		if (journalSize > maxJournalSize) {
+			try {
+				compact(folder);
+			} catch (IOException e) {
+				// The saves are safe in the journal, compacting is retried later
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Creates the journal record of a save, which is a delta
+	 * if the player's previous save is in the journal and
+	 * few of its slots changed. Inventories in the compact
+	 * format are always written as a whole.
+	 * 
+	 * @param inventory The save
+	 * @param previousFingerprint Fingerprint of the player's journaled save, null if there is none
+	 * @param fingerprints Fingerprints of the batch, to which the save's fingerprint is put
+	 * @return The save or a delta of it
+	 */
+	private static StoredInventory createRecord(StoredInventory inventory, Fingerprint previousFingerprint, Map<UUID,Fingerprint> fingerprints) {
+		final String[] items;
+		
+		try {
+			items = InventoryDelta.split(inventory.getInventory());
+		} catch (IllegalArgumentException e) {
+			fingerprints.put(inventory.getUuid(), null);
+			return inventory;
+		}
+		
+		final long[] fingerprint = InventoryDelta.fingerprint(items);
+		
+		if (previousFingerprint != null && previousFingerprint.deltas < MAX_DELTAS) {
+			final InventoryDelta delta = InventoryDelta.between(inventory, items, fingerprint, previousFingerprint.hashes);
+			
+			// A delta of most slots isn't worth replaying
+			if (delta.getSlots().length * 2 <= items.length) {
+				fingerprints.put(inventory.getUuid(), new Fingerprint(fingerprint, previousFingerprint.deltas + 1));
+				return delta;
+			}
+		}
+		
+		fingerprints.put(inventory.getUuid(), new Fingerprint(fingerprint, 0));
+		return inventory;
+	}
+	
+	/**
+	 * Returns the latest journaled save of every player in
+	 * a world, replaying the journal the first time. Should
+	 * be called while holding the journal.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param journal The world's journal
+	 * @return The journaled world
+	 * @throws IOException If the journal could not be read
+	 */
+	private JournaledWorld getJournaledWorld(File folder, InventoryJournal journal) throws IOException {
+		JournaledWorld journaledWorld = journaledWorlds.get(folder);
+		
+		if (journaledWorld == null) {
+			journaledWorld = new JournaledWorld(journal.replay());
+			journaledWorlds.put(folder, journaledWorld);
+		}
+		
+		return journaledWorld;
+	}
+	
+	/**
+	 * Writes the latest save of every player in a world's
+	 * journal to their player file and deletes the journal.
+	 * Player files are replaced atomically, so a crash leaves
+	 * either the old or the new file. Items in the world's
+	 * item dictionary which are no longer referred to by
+	 * any player file are removed from it afterwards.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @throws IOException If the player files could not be written
+	 */
+	public void compact(File folder) throws IOException {
+		final InventoryJournal journal = InventoryJournal.forFolder(folder);
+		final ItemDictionary dictionary = ItemDictionary.forFolder(folder);
+		
+		// Holding the journal so no saves are appended in between
+		synchronized (journal) {
+			final Collection<StoredInventory> records = journal.replay().values();
+			final Map<UUID,String> inventories = new HashMap<>();
+			
+			for (final StoredInventory record : records) {
+				inventories.put(record.getUuid(), itemDictionary ? dictionary.intern(record.getInventory()) : record.getInventory());
+			}
+			
+			// New items have to be on disk before any player file refers to them
+			dictionary.save();
+			
+			try {
+				for (final StoredInventory record : records) {
+					final File file = WorldInventoryCache.getPlayerFile(folder, record.getUuid());
+					// Without a dictionary there are no references to move
+					final String previousInventory = dictionary.isEmpty() || !file.exists() ? null : YamlConfiguration.loadConfiguration(file).getString("inventory");
+					final String inventory = inventories.get(record.getUuid());
+					
+					writePlayerFile(file, record.getName(), inventory);
+					dictionary.updateReferences(previousInventory, inventory);
+				}
+			} finally {
+				// The counts match the player files on disk, even if not all of them could be written
+				dictionary.collect();
+				dictionary.save();
+			}
+			
+			journal.delete();
+			journaledWorlds.remove(folder);
+		}
+	}
+	
+	/**
+	 * Counts the references to a world's item dictionary
+	 * in all of its player files from scratch, as the
+	 * counts on disk are off if the server crashed while
+	 * the player files were being written.
+	 * 
+	 * @param folder Inventory folder of the world
+	 */
+	private static void recountReferences(File folder) {
+		final File[] files = folder.listFiles((directory, name) -> name.endsWith(".yml") && !name.equals(ItemDictionary.FILE_NAME));
+		final List<String> inventories = new ArrayList<>();
+		
+		if (files == null) {
+			return;
+		}
+		
+		for (final File file : files) {
+			final String inventory = YamlConfiguration.loadConfiguration(file).getString("inventory");
+			
+			if (inventory != null) {
+				inventories.add(inventory);
+			}
+		}
+		
+		ItemDictionary.forFolder(folder).recount(inventories);
+	}
+	
+	/**
+	 * Rewrites a player's file with a converted inventory,
+	 * holding the world's journal so the file can't be
+	 * compacted over in between. References to the item
+	 * dictionary are resolved before converting, and the
+	 * converted inventory is interned again the same way
+	 * compaction does.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @param uuid UUID of the player
+	 * @param conversion Converts the serialized inventory
+	 * @return Whether the file was rewritten, false if it holds no inventory or the conversion didn't change it
+	 * @throws IOException If the file could not be written
+	 */
+	public boolean rewritePlayerFile(File folder, UUID uuid, UnaryOperator<String> conversion) throws IOException {
+		final InventoryJournal journal = InventoryJournal.forFolder(folder);
+		final ItemDictionary dictionary = ItemDictionary.forFolder(folder);
+		
+		synchronized (journal) {
+			final File file = WorldInventoryCache.getPlayerFile(folder, uuid);
+			final FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+			final String storedInventory = configuration.getString("inventory");
+			
+			if (storedInventory == null) {
+				return false;
+			}
+			
+			final String resolvedInventory = dictionary.resolve(storedInventory);
+			final String convertedInventory = conversion.apply(resolvedInventory);
+			
+			if (convertedInventory.equals(resolvedInventory)) {
+				return false;
+			}
+			
+			final String inventory = itemDictionary ? dictionary.intern(convertedInventory) : convertedInventory;
+			
+			// New items have to be on disk before the player file refers to them
+			dictionary.save();
+			writePlayerFile(file, configuration.getString("name"), inventory);
+			dictionary.updateReferences(storedInventory, inventory);
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Removes the items of a world's item dictionary which
+	 * are no longer referred to since player files were
+	 * rewritten.
+	 * 
+	 * @param folder Inventory folder of the world
+	 * @throws IOException If the dictionary could not be written
+	 */
+	public void collectItems(File folder) throws IOException {
+		final ItemDictionary dictionary = ItemDictionary.forFolder(folder);
+		
+		// Holding the journal so no compaction has interned items which aren't referred to yet
+		synchronized (InventoryJournal.forFolder(folder)) {
+			dictionary.collect();
+			dictionary.save();
+		}
+	}
+	
+	/**
+	 * Atomically replaces a player's inventory file.
+	 * 
+	 * @param file The player's inventory file
+	 * @param name Name of the player
+	 * @param inventory The serialized inventory
+	 * @throws IOException If the file could not be written
+	 */
+	private static void writePlayerFile(File file, String name, String inventory) throws IOException {
+		final FileConfiguration configuration = new YamlConfiguration();
+		final File temporaryFile = new File(file.getPath() + ".tmp");
+		
+		configuration.set("name", name);
+		configuration.set("inventory", inventory);
+		configuration.save(temporaryFile);
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Compacts the journals of all worlds which saves
+	 * haven't been written to their player files yet.
+	 */
+	@Override
+	public void compact() {
+		for (final File folder : new ArrayList<>(journaledWorlds.keySet())) {
+			try {
+				compact(folder);
+			} catch (IOException e) {
+				// The journal is kept, so nothing is lost
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Compacts all journals in the inventory folders of a
+	 * plugin, recovering the saves which were only written
+	 * to a journal before the server stopped or crashed.
+	 */
+	@Override
+	public int recover(File dataFolder) {
+		final File[] folders = dataFolder.listFiles(folder -> new File(folder, InventoryJournal.FILE_NAME).exists());
+		
+		if (folders == null) {
+			return 0;
+		}
+		
+		for (final File folder : folders) {
+			if (new File(folder, ItemDictionary.FILE_NAME).exists()) {
+				recountReferences(folder);
+			}
+			
+			try {
+				compact(folder);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return folders.length;
+	}
+	
+	private static class JournaledWorld {
+		// Latest journaled save per player
+		private final Map<UUID,StoredInventory> inventories;
+		// Fingerprints of the journaled saves which deltas can be appended to
+		private final Map<UUID,Fingerprint> fingerprints;
+		
+		private JournaledWorld(Map<UUID,StoredInventory> inventories) {
+			this.inventories = new ConcurrentHashMap<>(inventories);
+			this.fingerprints = new HashMap<>();
+		}
+	}
+	
+	private static class Fingerprint {
+		private final long[] hashes;
+		private final int deltas;
+		
+		private Fingerprint(long[] hashes, int deltas) {
+			this.hashes = hashes;
+			this.deltas = deltas;
+		}
+	}
+}
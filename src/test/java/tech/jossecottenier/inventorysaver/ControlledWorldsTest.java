@@ -1,11 +1,18 @@
 package tech.jossecottenier.inventorysaver;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.bukkit.World;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -47,10 +54,33 @@ public class ControlledWorldsTest {
 	
 	@After
 	public void tearDown() {
-		ControlledWorlds.getWorlds().clear();
+		ControlledWorlds.setWorlds(Collections.emptyList());
 		MockBukkit.unmock();
 	}
 	
+	@Test
+	public void concurrentUpdatesKeepAllWorlds() throws InterruptedException {
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		final List<World> worlds = new ArrayList<>();
+		
+		for (int i = 0; i < 64; i++) {
+			final World world = new WorldMock();
+			worlds.add(world);
+			
+			callers.execute(() -> {
+				ControlledWorlds.addWorld(world);
+				ControlledWorlds.isControlled(world);
+			});
+		}
+		
+		callers.shutdown();
+		assertTrue(callers.awaitTermination(10, TimeUnit.SECONDS));
+		
+		for (final World world : worlds) {
+			assertTrue(ControlledWorlds.isControlled(world));
+		}
+	}
+	
 	@Test
 	public void returnsList() {
 		assertTrue(ControlledWorlds.getWorlds() instanceof List<?>);
@@ -85,6 +115,56 @@ public class ControlledWorldsTest {
 		assertTrue(ControlledWorlds.getWorlds().contains(fileWorldMock));
 	}
 	
+	@Test
+	public void worldIsControlledAfterAdding() {
+		final WorldMock worldMock = new WorldMock();
+		assertFalse(ControlledWorlds.isControlled(worldMock));
+		
+		ControlledWorlds.addWorld(worldMock);
+		assertTrue(ControlledWorlds.isControlled(worldMock));
+	}
+	
+	@Test
+	public void worldsGetReplacedAtOnce() {
+		final WorldMock first = new WorldMock();
+		final WorldMock second = new WorldMock();
+		
+		ControlledWorlds.setWorlds(Arrays.asList(first, second));
+		assertEquals(Arrays.asList(first, second), ControlledWorlds.getWorlds());
+		assertFalse(ControlledWorlds.isControlled(fileWorldMock));
+	}
+	
+	@Test
+	public void worldsRemovedFromFileGetRemoved() {
+		final WorldMock worldMock = new WorldMock();
+		server.addWorld(worldMock);
+		configuration.set("worlds", new String[] { worldMock.getName() });
+		
+		try {
+			configuration.save(worldsFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		ControlledWorlds.loadFromFile(worldsFile, server);
+		assertTrue(ControlledWorlds.isControlled(worldMock));
+		assertFalse(ControlledWorlds.isControlled(fileWorldMock));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void returnedListIsImmutable() {
+		ControlledWorlds.getWorlds().add(new WorldMock());
+	}
+	
+	@Test
+	public void returnedListIsSnapshot() {
+		final List<World> worlds = ControlledWorlds.getWorlds();
+		final int size = worlds.size();
+		ControlledWorlds.addWorld(new WorldMock());
+		
+		assertEquals(size, worlds.size());
+	}
+	
 	private void simulateFile() {
 		configuration = YamlConfiguration.loadConfiguration(worldsFile);
 		
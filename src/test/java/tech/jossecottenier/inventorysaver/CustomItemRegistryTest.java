@@ -0,0 +1,125 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+
+public class CustomItemRegistryTest {
+	private CustomItemRegistry registry;
+	
+	@Before
+	public void setUp() {
+		MockBukkit.mock();
+		registry = new CustomItemRegistry();
+	}
+	
+	@After
+	public void tearDown() {
+		MockBukkit.unmock();
+	}
+	
+	private ItemStack createNamedItem(Material material, String name) {
+		final ItemStack item = new ItemStack(material);
+		final ItemMeta meta = item.getItemMeta();
+		meta.setDisplayName(name);
+		item.setItemMeta(meta);
+		
+		return item;
+	}
+	
+	@Test
+	public void findsItemsByName() {
+		final ItemStack customItem = Randomizer.createRandomCustomItem();
+		registry.register(customItem);
+		
+		assertSame(customItem, registry.getByName(customItem.getItemMeta().getDisplayName()));
+		assertNull(registry.getByName("not registered"));
+		assertNull(registry.getByName(null));
+	}
+	
+	@Test
+	public void doesntFindUnnamedItemsByName() {
+		registry.register("unnamed", new ItemStack(Material.STICK));
+		
+		assertNull(registry.getByName(""));
+	}
+	
+	@Test
+	public void firstRegisteredItemWins() {
+		final ItemStack first = createNamedItem(Material.STICK, "Wand");
+		final ItemStack second = createNamedItem(Material.BLAZE_ROD, "Wand");
+		registry.register(first);
+		registry.register(second);
+		
+		assertSame(first, registry.getByName("Wand"));
+	}
+	
+	@Test
+	public void fallsBackToNextItemAfterUnregistering() {
+		final ItemStack first = createNamedItem(Material.STICK, "Wand");
+		final ItemStack second = createNamedItem(Material.BLAZE_ROD, "Wand");
+		registry.register(first);
+		registry.register(second);
+		
+		assertTrue(registry.unregister(first));
+		assertSame(second, registry.getByName("Wand"));
+	}
+	
+	@Test
+	public void findsItemsByKey() {
+		final ItemStack keyedItem = registry.register("wand", createNamedItem(Material.STICK, "Wand"));
+		
+		assertEquals("wand", CustomItemRegistry.getKey(keyedItem));
+		assertSame(keyedItem, registry.getByKey("wand"));
+	}
+	
+	@Test
+	public void registersItemsInBulk() {
+		final List<ItemStack> customItems = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			customItems.add(createNamedItem(Material.STICK, "Item " + i));
+		}
+		registry.registerAll(customItems);
+		
+		assertEquals(customItems, registry.getItems());
+		assertSame(customItems.get(42), registry.getByName("Item 42"));
+	}
+	
+	@Test
+	public void registersItemsConcurrently() throws InterruptedException {
+		final List<Thread> threads = new ArrayList<>();
+		
+		for (int i = 0; i < 4; i++) {
+			final int thread = i;
+			threads.add(new Thread(() -> {
+				for (int j = 0; j < 50; j++) {
+					registry.registerAll(Collections.singletonList(createNamedItem(Material.STICK, thread + "-" + j)));
+				}
+			}));
+		}
+		
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertEquals(200, registry.getItems().size());
+		assertEquals(Material.STICK, registry.getByName("3-49").getType());
+	}
+}
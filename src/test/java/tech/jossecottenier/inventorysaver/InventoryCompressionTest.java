@@ -0,0 +1,70 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class InventoryCompressionTest {
+	private static final byte[] INVENTORY = String.join("-", Collections.nCopies(20, "m=DIAMOND_SWORD,a=1,n=null,d=0,e=sharpness:3;unbreaking:1--m=COBBLESTONE,a=64,n=null,d=0"))
+			.getBytes(StandardCharsets.UTF_8);
+	
+	@Test
+	public void decompressesToSameData() {
+		final byte[] compressedData = InventoryCompression.compress(InventoryCompression.STRING_FORMAT, INVENTORY);
+		
+		assertArrayEquals(INVENTORY, InventoryCompression.decompress(compressedData));
+		assertEquals(InventoryCompression.STRING_FORMAT, InventoryCompression.getFormat(compressedData));
+	}
+	
+	@Test
+	public void compressesTypicalInventories() {
+		assertTrue(InventoryCompression.compress(InventoryCompression.STRING_FORMAT, INVENTORY).length * 10 < INVENTORY.length);
+	}
+	
+	@Test
+	public void dictionaryHelpsSmallInventories() {
+		final byte[] inventory = "m=DIAMOND_PICKAXE,a=1,n=null,d=0,e=efficiency:3;unbreaking:1-m=TORCH,a=64,n=null,d=0".getBytes(StandardCharsets.UTF_8);
+		
+		assertTrue(InventoryCompression.compress(InventoryCompression.STRING_FORMAT, inventory).length * 3 < inventory.length);
+	}
+	
+	@Test
+	public void dictionaryMatchesSavedItemStrings() {
+		final byte[] inventory = (ItemStringReader.HEADER + "m=DIAMOND_PICKAXE,a=1,n=null,d=0,e=efficiency:3;unbreaking:1-m=TORCH,a=64,n=null,d=0,e=-m=BREAD,a=1,n=null,d=0,e=")
+				.getBytes(StandardCharsets.UTF_8);
+		
+		assertTrue(InventoryCompression.compress(InventoryCompression.STRING_FORMAT, inventory).length * 3 < inventory.length);
+	}
+	
+	@Test
+	public void decompressesLegacyDictionaryData() {
+		// Compressed with the first version of the dictionary, before it was built from actual item strings
+		final byte[] compressedData = new byte[] { 0, 1, 120, -7, -21, 39, -65, 46, 35, -104, 95, 112, 85, 58, -70, -8, 83, 19, 0, -27, 34, 27, -12 };
+		final byte[] inventory = "m=DIAMOND_SWORD,a=1,n=null,d=0,e=sharpness:3;unbreaking:1--m=COBBLESTONE,a=64,n=null,d=0".getBytes(StandardCharsets.UTF_8);
+		
+		assertArrayEquals(inventory, InventoryCompression.decompress(compressedData));
+		assertEquals(InventoryCompression.STRING_FORMAT, InventoryCompression.getFormat(compressedData));
+	}
+	
+	@Test
+	public void keepsFormat() {
+		final byte[] data = new byte[] { 1, 2, 3, 4 };
+		final byte[] compressedData = InventoryCompression.compress(InventoryCompression.COMPACT_FORMAT, data);
+		
+		assertArrayEquals(data, InventoryCompression.decompress(compressedData));
+		assertEquals(InventoryCompression.COMPACT_FORMAT, InventoryCompression.getFormat(compressedData));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCutOffData() {
+		final byte[] compressedData = InventoryCompression.compress(InventoryCompression.STRING_FORMAT, INVENTORY);
+		
+		InventoryCompression.decompress(Arrays.copyOf(compressedData, compressedData.length / 2));
+	}
+}
@@ -0,0 +1,69 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class InventoryDeltaTest {
+	private static final String STONE = "m=STONE,a=1,n=null,d=0";
+	private static final String NAMED_SWORD = "m=DIAMOND_SWORD,a=1,n=Sword-of,n=-d=,d=3,e=sharpness:2;unbreaking:1";
+	private static final String DIRT = "m=DIRT,a=64,n=null,d=0";
+	
+	private static String join(String... items) {
+		return String.join(String.valueOf(ItemStringReader.ITEM_SEPARATOR), items);
+	}
+	
+	private static InventoryDelta between(String previousInventory, String inventory) {
+		final String[] items = InventoryDelta.split(inventory);
+		final StoredInventory storedInventory = new StoredInventory(UUID.randomUUID(), "tester", inventory);
+		
+		return InventoryDelta.between(storedInventory, items, InventoryDelta.fingerprint(items), InventoryDelta.fingerprint(InventoryDelta.split(previousInventory)));
+	}
+	
+	@Test
+	public void splitsItemsWithSeparatorsInNames() {
+		assertArrayEquals(new String[] { STONE, "", NAMED_SWORD, "" }, InventoryDelta.split(join(STONE, "", NAMED_SWORD, "")));
+	}
+	
+	@Test
+	public void onlyHoldsChangedSlots() {
+		final InventoryDelta delta = between(join(STONE, "", DIRT), join(STONE, NAMED_SWORD, DIRT));
+		
+		assertArrayEquals(new int[] { 1 }, delta.getSlots());
+		assertArrayEquals(new String[] { NAMED_SWORD }, delta.getItems());
+	}
+	
+	@Test
+	public void appliesChangedSlots() {
+		final String previousInventory = join(STONE, NAMED_SWORD, "", DIRT);
+		final String inventory = join("", NAMED_SWORD, STONE, DIRT);
+		
+		assertEquals(inventory, between(previousInventory, inventory).applyTo(previousInventory));
+	}
+	
+	@Test
+	public void appliesResizedInventories() {
+		final String smallInventory = join(STONE, DIRT);
+		final String largeInventory = join(STONE, DIRT, "", NAMED_SWORD);
+		
+		assertEquals(largeInventory, between(smallInventory, largeInventory).applyTo(smallInventory));
+		assertEquals(smallInventory, between(largeInventory, smallInventory).applyTo(largeInventory));
+	}
+	
+	@Test
+	public void keepsVersionHeader() {
+		final String previousInventory = ItemStringReader.HEADER + join("", DIRT);
+		final InventoryDelta delta = between(previousInventory, ItemStringReader.HEADER + join(STONE, DIRT));
+		
+		assertArrayEquals(new String[] { "", DIRT }, InventoryDelta.split(previousInventory));
+		assertEquals(ItemStringReader.HEADER + join(STONE, DIRT), delta.applyTo(previousInventory));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCompactInventories() {
+		InventoryDelta.split(InventorySaver.COMPACT_PREFIX + "AAAA");
+	}
+}
@@ -0,0 +1,129 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InventoryJournalTest {
+	private File folder;
+	private File file;
+	private InventoryJournal journal;
+	
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("journal-test").toFile();
+		file = new File(folder, InventoryJournal.FILE_NAME);
+		journal = InventoryJournal.forFolder(folder);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		journal.delete();
+		folder.delete();
+	}
+	
+	@Test
+	public void replaysLatestRecordOfEveryPlayer() throws IOException {
+		final UUID first = UUID.randomUUID();
+		final UUID second = UUID.randomUUID();
+		
+		journal.append(Arrays.asList(new StoredInventory(first, "first", "old"), new StoredInventory(second, null, "second")));
+		journal.append(Arrays.asList(new StoredInventory(first, "first", "new")));
+		final Map<UUID,StoredInventory> records = journal.replay();
+		
+		assertEquals(2, records.size());
+		assertEquals("new", records.get(first).getInventory());
+		assertNull(records.get(second).getName());
+	}
+	
+	@Test
+	public void appliesDeltasToPreviousRecords() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		
+		journal.append(Arrays.asList(new StoredInventory(uuid, "tester", "m=STONE,a=1,n=null,d=0--m=DIRT,a=2,n=null,d=0")));
+		journal.append(Arrays.asList(new InventoryDelta(uuid, "tester", null, 3, new int[] { 1 }, new String[] { "m=STICK,a=1,n=null,d=0" })));
+		
+		assertEquals("m=STONE,a=1,n=null,d=0-m=STICK,a=1,n=null,d=0-m=DIRT,a=2,n=null,d=0", journal.replay().get(uuid).getInventory());
+	}
+	
+	@Test
+	public void countsWrittenBytes() throws IOException {
+		final long bytesWritten = InventoryMetrics.getInstance().getBytesWritten();
+		final long size = journal.append(Arrays.asList(new StoredInventory(UUID.randomUUID(), "tester", "serialization")));
+		
+		assertEquals(size, InventoryMetrics.getInstance().getBytesWritten() - bytesWritten);
+	}
+	
+	@Test
+	public void cutsOffTornTail() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final long size = journal.append(Arrays.asList(new StoredInventory(uuid, "tester", "serialization")));
+		
+		// Simulating a crash halfway through the next append
+		Files.write(file.toPath(), new byte[] { 0, 0, 0, 40, 1, 2 }, StandardOpenOption.APPEND);
+		
+		assertEquals("serialization", journal.replay().get(uuid).getInventory());
+		assertEquals(size, journal.size());
+	}
+	
+	@Test
+	public void stopsAtCorruptRecord() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final long size = journal.append(Arrays.asList(new StoredInventory(uuid, "tester", "old")));
+		journal.append(Arrays.asList(new StoredInventory(uuid, "tester", "new")));
+		
+		// Flipping the last byte of the second record
+		final byte[] bytes = Files.readAllBytes(file.toPath());
+		bytes[bytes.length - 1] ^= 1;
+		Files.write(file.toPath(), bytes);
+		
+		assertEquals("old", journal.replay().get(uuid).getInventory());
+		assertEquals(size, journal.size());
+	}
+	
+	@Test
+	public void cutsOffFailedAppend() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final long size = journal.append(Arrays.asList(new StoredInventory(uuid, "tester", "old")));
+		final InventoryJournal failingJournal = new InventoryJournal(folder) {
+			@Override
+			protected void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+				// Simulating a full disk halfway through the records
+				buffer.limit(buffer.limit() / 2);
+				channel.write(buffer);
+				throw new IOException("No space left on device");
+			}
+		};
+		
+		try {
+			failingJournal.append(Arrays.asList(new StoredInventory(uuid, "tester", "lost")));
+			fail();
+		} catch (IOException e) {
+			assertEquals(size, journal.size());
+		}
+		
+		journal.append(Arrays.asList(new StoredInventory(uuid, "tester", "new")));
+		
+		assertEquals("new", journal.replay().get(uuid).getInventory());
+	}
+	
+	@Test
+	public void replaysNothingWithoutJournal() throws IOException {
+		assertTrue(journal.replay().isEmpty());
+	}
+}
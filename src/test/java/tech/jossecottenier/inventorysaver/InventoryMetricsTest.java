@@ -0,0 +1,70 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class InventoryMetricsTest {
+	@Test
+	public void recordsLatencies() {
+		final InventoryMetrics metrics = new InventoryMetrics();
+		
+		for (int i = 0; i < 99; i++) {
+			metrics.record(InventoryMetrics.Operation.SAVE, System.nanoTime() - 1_000_000);
+		}
+		metrics.record(InventoryMetrics.Operation.SAVE, System.nanoTime() - 100_000_000);
+		
+		final InventoryMetrics.LatencySnapshot latency = metrics.getSaveLatency();
+		
+		assertEquals(100, latency.getCount());
+		// Percentiles are rounded up to the next power of two nanoseconds
+		assertTrue(latency.getMedianMicros() >= 1000 && latency.getMedianMicros() < 4000);
+		assertTrue(latency.getP99Micros() < 100_000);
+		assertTrue(latency.getMaxMicros() >= 100_000);
+		assertEquals(0, metrics.getLoadLatency().getCount());
+	}
+	
+	@Test
+	public void countsAndResets() {
+		final InventoryMetrics metrics = new InventoryMetrics();
+		metrics.increment(InventoryMetrics.Counter.CACHE_HITS);
+		metrics.increment(InventoryMetrics.Counter.CACHE_HITS);
+		metrics.add(InventoryMetrics.Counter.BYTES_WRITTEN, 512);
+		metrics.record(InventoryMetrics.Operation.LOAD, System.nanoTime());
+		
+		assertEquals(2, metrics.getCacheHits());
+		assertEquals(0, metrics.getCacheMisses());
+		assertEquals(512, metrics.getBytesWritten());
+		
+		metrics.reset();
+		
+		assertEquals(0, metrics.getCacheHits());
+		assertEquals(0, metrics.getBytesWritten());
+		assertEquals(0, metrics.getLoadLatency().getCount());
+	}
+	
+	@Test
+	public void isExposedThroughJmx() throws Exception {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name = new ObjectName("tech.jossecottenier.inventorysaver:type=InventoryMetricsTest");
+		final InventoryMetrics metrics = new InventoryMetrics();
+		metrics.record(InventoryMetrics.Operation.SERIALIZATION, System.nanoTime());
+		server.registerMBean(metrics, name);
+		
+		try {
+			final CompositeData latency = (CompositeData)server.getAttribute(name, "SerializationLatency");
+			
+			assertEquals(1L, latency.get("count"));
+			assertEquals(0L, server.getAttribute(name, "CacheHits"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.Inventory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+
+public class InventoryMigratorTest {
+	private Main plugin;
+	private InventorySaver inventorySaver;
+	private InventoryMigrator migrator;
+	
+	private File worldFolder;
+	private UUID uuid;
+	private File playerFile;
+	private Inventory inventory;
+	
+	@Before
+	public void setUp() throws IOException {
+		MockBukkit.mock();
+		plugin = (Main)MockBukkit.load(Main.class);
+		
+		inventorySaver = new InventorySaver();
+		migrator = new InventoryMigrator(inventorySaver, new YamlInventoryStorage(), plugin.getLogger());
+		worldFolder = new File(plugin.getDataFolder() + File.separator + "migrated-world");
+		worldFolder.mkdirs();
+		uuid = UUID.randomUUID();
+		playerFile = WorldInventoryCache.getPlayerFile(worldFolder, uuid);
+		inventory = Randomizer.createRandomInventory();
+		
+		// Saved before inventories had a version header
+		writePlayerFile(inventorySaver.serializeInventory(inventory));
+	}
+	
+	@After
+	public void tearDown() {
+		MockBukkit.unmock();
+	}
+	
+	private void writePlayerFile(String serialization) throws IOException {
+		final FileConfiguration configuration = new YamlConfiguration();
+		configuration.set("name", "tester");
+		configuration.set("inventory", serialization);
+		configuration.save(playerFile);
+	}
+	
+	private String readPlayerFile() {
+		return YamlConfiguration.loadConfiguration(playerFile).getString("inventory");
+	}
+	
+	@Test
+	public void addsVersionHeader() throws IOException {
+		assertEquals(1, migrator.migrate(worldFolder));
+		
+		assertTrue(readPlayerFile().startsWith(ItemStringReader.HEADER));
+		assertArrayEquals(inventory.getContents(), inventorySaver.deserializeInventory(readPlayerFile()));
+	}
+	
+	@Test
+	public void convertsToConfiguredFormat() throws IOException {
+		inventorySaver.setCompactFormat(true);
+		migrator.migrate(worldFolder);
+		
+		assertTrue(readPlayerFile().startsWith(InventorySaver.COMPACT_PREFIX));
+		assertArrayEquals(inventory.getContents(), inventorySaver.deserializeInventory(readPlayerFile()));
+	}
+	
+	@Test
+	public void skipsMigratedInventories() throws IOException {
+		migrator.migrate(worldFolder);
+		
+		assertEquals(0, migrator.migrate(worldFolder));
+	}
+	
+	@Test
+	public void leavesUnreadableInventories() throws IOException {
+		writePlayerFile(InventorySaver.COMPACT_PREFIX + "AAAA");
+		
+		assertEquals(0, migrator.migrate(worldFolder));
+		assertEquals(InventorySaver.COMPACT_PREFIX + "AAAA", readPlayerFile());
+	}
+	
+	@Test
+	public void convertsJournaledInventories() throws IOException {
+		final YamlInventoryStorage storage = new YamlInventoryStorage();
+		final InventoryMigrator journalMigrator = new InventoryMigrator(inventorySaver, storage, plugin.getLogger());
+		storage.save(worldFolder, Collections.singletonList(new StoredInventory(uuid, "tester", inventorySaver.serializeInventory(inventory))));
+		journalMigrator.migrate(worldFolder);
+		storage.compact();
+		
+		assertTrue(readPlayerFile().startsWith(ItemStringReader.HEADER));
+	}
+	
+	@Test
+	public void keepsDictionaryOfMigratedInventories() throws IOException {
+		final YamlInventoryStorage storage = new YamlInventoryStorage();
+		final InventoryMigrator dictionaryMigrator = new InventoryMigrator(inventorySaver, storage, plugin.getLogger());
+		final File dictionaryFile = new File(worldFolder, ItemDictionary.FILE_NAME);
+		storage.setItemDictionary(true);
+		inventory.setItem(0, Randomizer.createRandomModifiedTool());
+		writePlayerFile(inventorySaver.serializeInventory(inventory));
+		dictionaryMigrator.migrate(worldFolder);
+		
+		final String migratedInventory = readPlayerFile();
+		final byte[] dictionary = Files.readAllBytes(dictionaryFile.toPath());
+		
+		assertTrue(migratedInventory.indexOf(ItemStringReader.REFERENCE_PREFIX) >= 0);
+		assertEquals(0, dictionaryMigrator.migrate(worldFolder));
+		assertEquals(migratedInventory, readPlayerFile());
+		assertArrayEquals(dictionary, Files.readAllBytes(dictionaryFile.toPath()));
+		assertArrayEquals(inventory.getContents(), inventorySaver.deserializeInventory(storage.load(worldFolder, uuid).getInventory()));
+	}
+}
@@ -1,9 +1,19 @@
 package tech.jossecottenier.inventorysaver;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.bukkit.Material;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -36,7 +46,7 @@ public class InventorySaverTest {
 	private WorldMock controlledWorldMock;
 	private WorldMock notControlledWorldMock;
 	
-	private File worldInventoryFile;
+	private File worldInventoryFolder;
 	private FileConfiguration configuration;
 	
 	@Before
@@ -49,7 +59,7 @@ public class InventorySaverTest {
 		controlledWorldMock = new WorldMock(Material.OAK_PLANKS, 5);
 		notControlledWorldMock = new WorldMock(Material.BIRCH_PLANKS, 5);
 		
-		worldInventoryFile = new File(plugin.getDataFolder() + File.separator + controlledWorldMock.getName() + ".yml");
+		worldInventoryFolder = new File(plugin.getDataFolder() + File.separator + controlledWorldMock.getName());
 		
 		final PlayerMock[] players = new PlayerMock[] { Randomizer.createRandomPlayer(server, 0), Randomizer.createRandomPlayer(server, 1) };
 		
@@ -71,19 +81,29 @@ public class InventorySaverTest {
 		MockBukkit.unmock();
 	}
 	
+	private void flushInventories() {
+		InventorySaver.flushCoalescedSaves();
+		WorldInventoryCache.getInstance().flush().join();
+		WorldInventoryCache.getInstance().compact().join();
+	}
+	
+	private File playerInventoryFile(PlayerMock player) {
+		return WorldInventoryCache.getPlayerFile(worldInventoryFolder, player.getUniqueId());
+	}
+	
 	private String createdEntry(PlayerMock player) {
 		// Update configuration file
-		configuration = YamlConfiguration.loadConfiguration(worldInventoryFile);
+		configuration = YamlConfiguration.loadConfiguration(playerInventoryFile(player));
 		
-		return configuration.getString(player.getName());
+		return configuration.getString("inventory");
 	}
 	
 	private boolean serializedInventoryMatchesPlayers(PlayerMock player) {
 		// Update configuration file
-		configuration = YamlConfiguration.loadConfiguration(worldInventoryFile);
+		configuration = YamlConfiguration.loadConfiguration(playerInventoryFile(player));
 		
-		final String serializationInFile = configuration.getString(player.getName());
-		final String serialization = inventorySaver.serializeInventory(player.getInventory());
+		final String serializationInFile = configuration.getString("inventory");
+		final String serialization = ItemStringReader.HEADER + inventorySaver.serializeInventory(player.getInventory());
 		
 		// "serialization" should go first as "serializationInFile" is nullable
 		return serialization.equals(serializationInFile);
@@ -119,19 +139,114 @@ public class InventorySaverTest {
 	@Test
 	public void fileGetsCreated() {
 		inventorySaver.saveInventory(firstPlayer);
-		assertTrue(worldInventoryFile.exists());
+		flushInventories();
+		assertTrue(playerInventoryFile(firstPlayer).exists());
 	}
 	
 	@Test
 	public void entryCreatedForFirstPlayer() {
 		inventorySaver.saveInventory(firstPlayer);
+		flushInventories();
 		assertNotNull(createdEntry(firstPlayer));
 	}
 	
+	@Test
+	public void savingOnlyWritesOwnFile() {
+		inventorySaver.saveInventory(firstPlayer);
+		flushInventories();
+		
+		for (final PlayerMock playerMock : server.getOnlinePlayers()) {
+			assertEquals(playerMock == firstPlayer, playerInventoryFile(playerMock).exists());
+		}
+	}
+	
+	@Test
+	public void bulkSaveWritesAllPlayers() {
+		inventorySaver.saveInventories(server.getOnlinePlayers(), plugin).join();
+		flushInventories();
+		
+		for (final PlayerMock player : server.getOnlinePlayers()) {
+			assertTrue(serializedInventoryMatchesPlayers(player));
+		}
+	}
+	
+	@Test
+	public void bulkSaveIsReadBack() {
+		inventorySaver.saveInventories(server.getOnlinePlayers(), plugin);
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		
+		assertArrayEquals(inventoryContents, inventorySaver.loadInventoryContents(firstPlayer, plugin));
+	}
+	
+	@Test
+	public void coalescesRepeatedSaves() {
+		inventorySaver.setCoalescingWindow(60000);
+		final CompletableFuture<Void> firstSave = inventorySaver.saveInventory(firstPlayer, plugin);
+		firstPlayer.getInventory().setContents(Randomizer.createRandomInventoryContents());
+		final CompletableFuture<Void> secondSave = inventorySaver.saveInventory(firstPlayer, plugin);
+		
+		assertSame(firstSave, secondSave);
+		assertFalse(playerInventoryFile(firstPlayer).exists());
+		
+		flushInventories();
+		firstSave.join();
+		assertTrue(serializedInventoryMatchesPlayers(firstPlayer));
+	}
+	
+	@Test
+	public void coalescedSaveIsReadBack() {
+		inventorySaver.setCoalescingWindow(60000);
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		firstPlayer.getInventory().clear();
+		
+		assertArrayEquals(inventoryContents, inventorySaver.loadInventoryContents(firstPlayer, plugin));
+		assertArrayEquals(inventoryContents, inventorySaver.prefetchInventory(firstPlayer, firstPlayer.getWorld(), plugin).join());
+	}
+	
+	@Test
+	public void bulkSaveReplacesCoalescedSave() {
+		inventorySaver.setCoalescingWindow(60000);
+		final CompletableFuture<Void> coalescedSave = inventorySaver.saveInventory(firstPlayer, plugin);
+		firstPlayer.getInventory().setContents(Randomizer.createRandomInventoryContents());
+		inventorySaver.saveInventories(server.getOnlinePlayers(), plugin).join();
+		
+		coalescedSave.join();
+		flushInventories();
+		assertTrue(serializedInventoryMatchesPlayers(firstPlayer));
+	}
+	
+	@Test
+	public void concurrentSavesOfDifferentPlayersAreAllWritten() throws InterruptedException {
+		for (int i = 2; i < 16; i++) {
+			server.addPlayer(Randomizer.createRandomPlayer(server, i));
+		}
+		
+		final List<PlayerMock> players = new ArrayList<>(server.getOnlinePlayers());
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		
+		for (final PlayerMock player : players) {
+			callers.execute(() -> {
+				for (int i = 0; i < 20; i++) {
+					inventorySaver.saveInventory(player, plugin);
+				}
+			});
+		}
+		
+		callers.shutdown();
+		assertTrue(callers.awaitTermination(30, TimeUnit.SECONDS));
+		flushInventories();
+		
+		for (final PlayerMock player : players) {
+			assertTrue(serializedInventoryMatchesPlayers(player));
+		}
+	}
+	
 	@Test
 	public void entryCreatedForAllPlayers() {
 		for (final PlayerMock playerMock : server.getOnlinePlayers()) {
 			inventorySaver.saveInventory(playerMock);
+			flushInventories();
 			assertNotNull(createdEntry(playerMock));
 		}
 	}
@@ -139,6 +254,7 @@ public class InventorySaverTest {
 	@Test
 	public void serializedInventoryIsCorrectForFirstPlayer() {
 		inventorySaver.saveInventory(firstPlayer);
+		flushInventories();
 		assertTrue(serializedInventoryMatchesPlayers(firstPlayer));
 	}
 	
@@ -146,6 +262,7 @@ public class InventorySaverTest {
 	public void serializedInventoryIsCorrectForAllPlayers() {
 		for (final PlayerMock playerMock : server.getOnlinePlayers()) {
 			inventorySaver.saveInventory(playerMock);
+			flushInventories();
 			assertTrue(serializedInventoryMatchesPlayers(playerMock));
 		}
 	}
@@ -161,6 +278,162 @@ public class InventorySaverTest {
 		assertArrayEquals(inventoryContents, appendNullToMatchLength(deserialization, inventoryContents.length));
 	}
 	
+	@Test
+	public void keepsTrailingEmptySlots() {
+		final ItemStack[] inventoryContents = new ItemStack[41];
+		inventoryContents[0] = Randomizer.createRandomItemStack();
+		
+		assertArrayEquals(inventoryContents, inventorySaver.deserializeInventory(inventorySaver.serializeInventory(inventoryContents)));
+	}
+	
+	@Test
+	public void streamedSerializationMatchesString() throws IOException {
+		final Inventory inventory = Randomizer.createRandomInventory();
+		final StringWriter writer = new StringWriter();
+		inventorySaver.serializeInventory(inventory.getContents(), writer);
+		
+		assertEquals(inventorySaver.serializeInventory(inventory), writer.toString());
+	}
+	
+	@Test
+	public void reusedBufferDoesNotLeakBetweenSerializations() {
+		final Inventory firstInventory = Randomizer.createRandomInventory();
+		final Inventory secondInventory = Randomizer.createRandomInventory();
+		final String firstSerialization = inventorySaver.serializeInventory(firstInventory);
+		inventorySaver.serializeInventory(secondInventory);
+		
+		assertEquals(firstSerialization, inventorySaver.serializeInventory(firstInventory));
+	}
+	
+	@Test
+	public void compactDataCanBePutIntoBuffer() {
+		final Inventory inventory = Randomizer.createRandomInventory();
+		final ByteBuffer buffer = ByteBuffer.allocate(16384);
+		inventorySaver.serializeInventoryCompact(inventory.getContents(), buffer);
+		
+		final byte[] data = Arrays.copyOf(buffer.array(), buffer.position());
+		assertArrayEquals(inventorySaver.serializeInventoryCompact(inventory), data);
+	}
+	
+	@Test
+	public void correctlyReconstructsGeneralInventoriesFromCompactData() {
+		final Inventory inventory = Randomizer.createRandomInventory();
+		final byte[] data = inventorySaver.serializeInventoryCompact(inventory);
+		
+		assertArrayEquals(inventory.getContents(), inventorySaver.deserializeInventory(data));
+	}
+	
+	@Test
+	public void compactDataIsSmallerThanString() {
+		final Inventory inventory = Randomizer.createRandomInventory();
+		
+		assertTrue(inventorySaver.serializeInventoryCompact(inventory).length < inventorySaver.serializeInventory(inventory).length());
+	}
+	
+	@Test
+	public void loadsInventoriesWithVersionHeader() {
+		final Inventory inventory = Randomizer.createRandomInventory();
+		final String serialization = ItemStringReader.HEADER + inventorySaver.serializeInventory(inventory);
+		
+		assertArrayEquals(inventory.getContents(), inventorySaver.deserializeInventory(serialization));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInventoriesOfNewerVersion() {
+		inventorySaver.deserializeInventory("v" + (ItemStringReader.VERSION + 1) + ":m=STONE,a=1,n=null,d=0");
+	}
+	
+	@Test
+	public void detectsCompactSerialization() {
+		final Inventory inventory = Randomizer.createRandomInventory();
+		final String serialization = InventorySaver.COMPACT_PREFIX + Base64.getEncoder().encodeToString(inventorySaver.serializeInventoryCompact(inventory));
+		
+		assertArrayEquals(inventory.getContents(), inventorySaver.deserializeInventory(serialization));
+	}
+	
+	@Test
+	public void loadsInventorySavedInCompactFormat() {
+		inventorySaver.setCompactFormat(true);
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
+		
+		assertTrue(createdEntry(firstPlayer).startsWith(InventorySaver.COMPACT_PREFIX));
+		assertArrayEquals(inventoryContents, inventorySaver.loadInventoryContents(firstPlayer, plugin));
+	}
+	
+	@Test
+	public void loadsCompressedInventory() {
+		inventorySaver.setCompression(true);
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
+		
+		assertTrue(createdEntry(firstPlayer).startsWith(InventorySaver.COMPRESSED_PREFIX));
+		assertArrayEquals(inventoryContents, inventorySaver.loadInventoryContents(firstPlayer, plugin));
+	}
+	
+	@Test
+	public void loadsCompressedInventoryInCompactFormat() {
+		inventorySaver.setCompactFormat(true);
+		inventorySaver.setCompression(true);
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
+		
+		assertTrue(createdEntry(firstPlayer).startsWith(InventorySaver.COMPRESSED_PREFIX));
+		assertArrayEquals(inventoryContents, inventorySaver.loadInventoryContents(firstPlayer, plugin));
+	}
+	
+	@Test
+	public void savesFullPlayerState() {
+		inventorySaver.setPlayerState(true);
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		final ItemStack enderChestItem = new ItemStack(Material.DIAMOND, 12);
+		firstPlayer.getEnderChest().setItem(3, enderChestItem);
+		firstPlayer.setLevel(17);
+		firstPlayer.setFoodLevel(9);
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
+		
+		firstPlayer.getEnderChest().clear();
+		firstPlayer.setLevel(0);
+		firstPlayer.setFoodLevel(20);
+		final PlayerState state = inventorySaver.loadPlayerState(firstPlayer, firstPlayer.getWorld(), plugin);
+		state.applyTo(firstPlayer);
+		
+		assertTrue(createdEntry(firstPlayer).startsWith(InventorySaver.PLAYER_STATE_PREFIX));
+		assertTrue(state.isFullState());
+		assertEquals(enderChestItem, firstPlayer.getEnderChest().getItem(3));
+		assertEquals(17, firstPlayer.getLevel());
+		assertEquals(9, firstPlayer.getFoodLevel());
+		assertArrayEquals(inventoryContents, inventorySaver.loadInventoryContents(firstPlayer, plugin));
+	}
+	
+	@Test
+	public void loadsCompressedPlayerState() {
+		inventorySaver.setPlayerState(true);
+		inventorySaver.setCompression(true);
+		firstPlayer.setLevel(5);
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
+		
+		assertTrue(createdEntry(firstPlayer).startsWith(InventorySaver.COMPRESSED_PREFIX));
+		assertEquals(5, inventorySaver.loadPlayerState(firstPlayer, firstPlayer.getWorld(), plugin).getLevel());
+	}
+	
+	@Test
+	public void loadsInventoryAsPlayerState() {
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
+		
+		final PlayerState state = inventorySaver.loadPlayerState(firstPlayer, firstPlayer.getWorld(), plugin);
+		
+		assertFalse(state.isFullState());
+		assertArrayEquals(inventoryContents, state.getContents());
+	}
+	
 	@Test
 	public void correctlyLoadsCustomItem() {
 		final ItemStack customItem = Randomizer.createRandomCustomItem();
@@ -188,6 +461,7 @@ public class InventorySaverTest {
 	public void inventorySavedWhenLeavingControlledWorld() {
 		final PlayerTeleportEvent leaveEvent = new PlayerTeleportEvent(firstPlayer, controlledWorldMock.getSpawnLocation(), notControlledWorldMock.getSpawnLocation());
 		inventorySaver.onTeleport(leaveEvent, plugin);
+		flushInventories();
 		
 		assertTrue(serializedInventoryMatchesPlayers(firstPlayer));
 	}
@@ -198,6 +472,7 @@ public class InventorySaverTest {
 		firstPlayer.teleport(controlledWorldMock.getSpawnLocation());
 		final PlayerQuitEvent quitEvent = new PlayerQuitEvent(firstPlayer, null);
 		inventorySaver.onQuit(quitEvent, plugin);
+		flushInventories();
 		
 		assertTrue(serializedInventoryMatchesPlayers(firstPlayer));
 	}
@@ -206,6 +481,7 @@ public class InventorySaverTest {
 	public void inventoryLoadedWhenJoiningControlledWorld() {
 		// Save inventory and clear
 		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
 		firstPlayer.getInventory().clear();
 		
 		final PlayerTeleportEvent joinEvent = new PlayerTeleportEvent(firstPlayer, notControlledWorldMock.getSpawnLocation(), controlledWorldMock.getSpawnLocation());
@@ -218,12 +494,50 @@ public class InventorySaverTest {
 		assertArrayEquals(inventoryContents, appendNullToMatchLength(deserializedContents, inventoryContents.length));
 	}
 	
+	@Test
+	public void prefetchedInventoryGetsAppliedWhenJoiningControlledWorld() {
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		inventorySaver.saveInventory(firstPlayer, controlledWorldMock, plugin);
+		firstPlayer.getInventory().clear();
+		
+		plugin.getDefaultInventorySaver().prefetchInventory(firstPlayer, controlledWorldMock, plugin).join();
+		final PlayerTeleportEvent joinEvent = new PlayerTeleportEvent(firstPlayer, notControlledWorldMock.getSpawnLocation(), controlledWorldMock.getSpawnLocation());
+		inventorySaver.onTeleport(joinEvent, plugin);
+		
+		assertArrayEquals(inventoryContents, firstPlayer.getInventory().getContents());
+	}
+	
+	@Test
+	public void savingReplacesPrefetchedInventory() {
+		plugin.getDefaultInventorySaver().prefetchInventory(firstPlayer, controlledWorldMock, plugin).join();
+		final ItemStack[] inventoryContents = Randomizer.createRandomInventoryContents();
+		firstPlayer.getInventory().setContents(inventoryContents);
+		inventorySaver.saveInventory(firstPlayer, controlledWorldMock, plugin);
+		firstPlayer.getInventory().clear();
+		
+		final PlayerTeleportEvent joinEvent = new PlayerTeleportEvent(firstPlayer, notControlledWorldMock.getSpawnLocation(), controlledWorldMock.getSpawnLocation());
+		inventorySaver.onTeleport(joinEvent, plugin);
+		
+		assertArrayEquals(inventoryContents, firstPlayer.getInventory().getContents());
+	}
+	
+	@Test
+	public void inventoryIsKeptWhenJoiningControlledWorldForFirstTime() {
+		final ItemStack[] inventoryContents = firstPlayer.getInventory().getContents();
+		
+		final PlayerTeleportEvent joinEvent = new PlayerTeleportEvent(firstPlayer, notControlledWorldMock.getSpawnLocation(), controlledWorldMock.getSpawnLocation());
+		inventorySaver.onTeleport(joinEvent, plugin);
+		
+		assertArrayEquals(inventoryContents, firstPlayer.getInventory().getContents());
+	}
+	
 	@Test
 	public void customItemsGetLoadedWhenJoiningControlledWorldAfterUpdatingInventorySaver() {
 		final ItemStack customItem = Randomizer.createRandomCustomItem();
 		final ItemStack[] inventoryContents = Randomizer.createRandomInventoryContentsIncluding(customItem);
 		firstPlayer.getInventory().setContents(inventoryContents);
 		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
 		firstPlayer.getInventory().clear();
 		
 		final InventorySaver newInventorySaver = new InventorySaver();
@@ -260,6 +574,7 @@ public class InventorySaverTest {
 		final ItemStack[] newInventoryContents = Randomizer.createRandomInventoryContents();
 		firstPlayer.getInventory().setContents(newInventoryContents);
 		firstPlayer.performCommand("inventory save");
+		flushInventories();
 		
 		assertTrue(serializedInventoryMatchesPlayers(firstPlayer));
 	}
@@ -267,6 +582,7 @@ public class InventorySaverTest {
 	@Test
 	public void serializationCanBeLoadedOnCommand() {
 		inventorySaver.saveInventory(firstPlayer, plugin);
+		flushInventories();
 		firstPlayer.getInventory().clear();
 		firstPlayer.performCommand("inventory load");
 		
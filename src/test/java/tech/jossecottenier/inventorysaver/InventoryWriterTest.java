@@ -0,0 +1,112 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InventoryWriterTest {
+	private InventoryWriter writer;
+	private File file;
+	
+	@Before
+	public void setUp() {
+		writer = new InventoryWriter();
+		file = new File("writer-test.yml");
+	}
+	
+	@After
+	public void tearDown() {
+		writer.shutdown();
+	}
+	
+	private Runnable slowWrite(AtomicBoolean written) {
+		return () -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			written.set(true);
+		};
+	}
+	
+	@Test
+	public void writesAreExecutedInOrder() {
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		
+		for (int i = 0; i < 10; i++) {
+			final int index = i;
+			writer.submit(file, () -> order.add(index));
+		}
+		writer.flush();
+		
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+	}
+	
+	@Test
+	public void futureCompletesAfterWrite() {
+		final AtomicBoolean written = new AtomicBoolean();
+		final CompletableFuture<Void> future = writer.submit(file, slowWrite(written));
+		
+		future.join();
+		assertTrue(written.get());
+	}
+	
+	@Test
+	public void awaitPendingWaitsForWrite() {
+		final AtomicBoolean written = new AtomicBoolean();
+		writer.submit(file, slowWrite(written));
+		
+		writer.awaitPending(file);
+		assertTrue(written.get());
+	}
+	
+	@Test
+	public void awaitPendingWaitsForWritesFromAllThreads() throws InterruptedException {
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		final AtomicInteger writes = new AtomicInteger();
+		final CountDownLatch queued = new CountDownLatch(8 * 100);
+		
+		for (int i = 0; i < 8; i++) {
+			callers.execute(() -> {
+				for (int j = 0; j < 100; j++) {
+					writer.submit(file, writes::incrementAndGet);
+					queued.countDown();
+				}
+			});
+		}
+		
+		queued.await();
+		writer.awaitPending(file);
+		callers.shutdown();
+		callers.awaitTermination(10, TimeUnit.SECONDS);
+		
+		assertEquals(8 * 100, writes.get());
+	}
+	
+	@Test
+	public void shutdownFinishesQueuedWrites() {
+		final AtomicBoolean written = new AtomicBoolean();
+		writer.submit(file, slowWrite(written));
+		
+		writer.shutdown();
+		assertTrue(written.get());
+	}
+}
@@ -0,0 +1,91 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ItemDictionaryTest {
+	private static final String SWORD = "m=DIAMOND_SWORD,a=1,n=Excalibur,d=0,e=sharpness:5";
+	private static final String STONE = "m=STONE,a=1,n=null,d=0";
+	
+	private File folder;
+	private ItemDictionary dictionary;
+	
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("dictionary-test").toFile();
+		dictionary = ItemDictionary.forFolder(folder);
+	}
+	
+	@After
+	public void tearDown() {
+		new File(folder, ItemDictionary.FILE_NAME).delete();
+		folder.delete();
+	}
+	
+	@Test
+	public void refersToLongItemsOnly() throws IOException {
+		final String inventory = SWORD + "--" + STONE;
+		final String interned = dictionary.intern(inventory);
+		
+		assertEquals("#0--" + STONE, interned);
+		assertEquals(inventory, dictionary.resolve(interned));
+	}
+	
+	@Test
+	public void keepsVersionHeader() throws IOException {
+		final String inventory = ItemStringReader.HEADER + SWORD;
+		final String interned = dictionary.intern(inventory);
+		
+		assertEquals(ItemStringReader.HEADER + "#0", interned);
+		assertEquals(inventory, dictionary.resolve(interned));
+	}
+	
+	@Test
+	public void sharesItemsBetweenInventories() {
+		assertEquals(dictionary.intern(SWORD), dictionary.intern(STONE + "-" + SWORD).substring(STONE.length() + 1));
+	}
+	
+	@Test
+	public void leavesOtherFormatsAsTheyAre() throws IOException {
+		assertEquals("c:AQAA", dictionary.intern("c:AQAA"));
+		assertEquals("c:AQAA", dictionary.resolve("c:AQAA"));
+		assertTrue(dictionary.isEmpty());
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsUnknownReferences() throws IOException {
+		dictionary.resolve("#7-" + STONE);
+	}
+	
+	@Test
+	public void collectsItemsWhichAreNoLongerReferenced() {
+		final String previousInventory = dictionary.intern(SWORD);
+		dictionary.updateReferences(null, previousInventory);
+		final String inventory = dictionary.intern(SWORD.replace("Excalibur", "Caliburn"));
+		dictionary.updateReferences(previousInventory, inventory);
+		
+		assertEquals(1, dictionary.collect());
+		assertEquals(0, dictionary.getReferences(SWORD));
+		assertFalse(dictionary.isEmpty());
+	}
+	
+	@Test
+	public void recountsReferences() {
+		final String inventory = dictionary.intern(SWORD + "-" + SWORD);
+		dictionary.updateReferences(null, inventory);
+		dictionary.updateReferences(null, inventory);
+		dictionary.recount(Arrays.asList(inventory));
+		
+		assertEquals(2, dictionary.getReferences(SWORD));
+	}
+}
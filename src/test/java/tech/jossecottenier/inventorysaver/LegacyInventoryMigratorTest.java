@@ -0,0 +1,97 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+
+public class LegacyInventoryMigratorTest {
+	private ServerMock server;
+	private Main plugin;
+	
+	private PlayerMock player;
+	private File legacyFile;
+	private File worldFolder;
+	private String serialization;
+	
+	@Before
+	public void setUp() {
+		server = MockBukkit.mock();
+		plugin = (Main)MockBukkit.load(Main.class);
+		
+		player = Randomizer.createRandomPlayer(server, 0);
+		server.addPlayer(player);
+		
+		legacyFile = new File(plugin.getDataFolder() + File.separator + "legacy-world.yml");
+		worldFolder = new File(plugin.getDataFolder() + File.separator + "legacy-world");
+		serialization = new InventorySaver().serializeInventory(player.getInventory());
+		
+		final FileConfiguration configuration = new YamlConfiguration();
+		configuration.set(player.getName(), serialization);
+		
+		try {
+			configuration.save(legacyFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		MockBukkit.unmock();
+	}
+	
+	private int migrate() {
+		return LegacyInventoryMigrator.migrate(plugin.getDataFolder(), server, WorldInventoryCache.getInstance().getStorage());
+	}
+	
+	@Test
+	public void splitsWorldFileIntoPlayerFiles() throws IOException {
+		migrate();
+		WorldInventoryCache.getInstance().getStorage().compact();
+		final File playerFile = WorldInventoryCache.getPlayerFile(worldFolder, player.getUniqueId());
+		
+		assertEquals(serialization, YamlConfiguration.loadConfiguration(playerFile).getString("inventory"));
+	}
+	
+	@Test
+	public void migratesOnlyOnce() {
+		assertEquals(1, migrate());
+		assertEquals(0, migrate());
+		
+		assertFalse(legacyFile.exists());
+		assertTrue(new File(legacyFile.getPath() + ".migrated").exists());
+	}
+	
+	@Test
+	public void migratesUnknownPlayersOnceTheyJoin() throws IOException {
+		final FileConfiguration configuration = YamlConfiguration.loadConfiguration(legacyFile);
+		configuration.set("newcomer", serialization);
+		configuration.save(legacyFile);
+		
+		assertEquals(0, migrate());
+		assertTrue(YamlConfiguration.loadConfiguration(legacyFile).isString("newcomer"));
+		assertFalse(YamlConfiguration.loadConfiguration(legacyFile).contains(player.getName()));
+		
+		final PlayerMock newcomer = new PlayerMock(server, "newcomer");
+		final WorldInventoryCache cache = WorldInventoryCache.getInstance();
+		
+		assertEquals(1, LegacyInventoryMigrator.migrate(newcomer, cache));
+		cache.flush().join();
+		
+		assertEquals(serialization, cache.get(worldFolder, newcomer.getUniqueId()));
+		assertTrue(new File(legacyFile.getPath() + ".migrated").exists());
+	}
+}
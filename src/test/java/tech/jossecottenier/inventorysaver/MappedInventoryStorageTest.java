@@ -0,0 +1,168 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedInventoryStorageTest {
+	private File worldFolder;
+	private MappedInventoryStorage storage;
+	
+	@Before
+	public void setUp() throws IOException {
+		worldFolder = Files.createTempDirectory("mapped-test").toFile();
+		storage = new MappedInventoryStorage();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		storage.close();
+		new File(worldFolder, MappedInventoryStorage.FILE_NAME).delete();
+		worldFolder.delete();
+	}
+	
+	private static String createInventory(int length) {
+		final char[] inventory = new char[length];
+		Arrays.fill(inventory, 'i');
+		
+		return new String(inventory);
+	}
+	
+	private void save(UUID uuid, String inventory) throws IOException {
+		storage.save(worldFolder, Collections.singletonList(new StoredInventory(uuid, "tester", inventory)));
+	}
+	
+	@Test
+	public void loadsSavedInventories() throws IOException {
+		final UUID first = UUID.randomUUID();
+		final UUID second = UUID.randomUUID();
+		storage.save(worldFolder, Arrays.asList(new StoredInventory(first, "first", "firstInventory"), new StoredInventory(second, null, "secondInventory")));
+		
+		assertEquals("first", storage.load(worldFolder, first).getName());
+		assertEquals("firstInventory", storage.load(worldFolder, first).getInventory());
+		assertNull(storage.load(worldFolder, second).getName());
+		assertEquals("secondInventory", storage.load(worldFolder, second).getInventory());
+	}
+	
+	@Test
+	public void returnsNullForMissingInventories() throws IOException {
+		assertNull(storage.load(worldFolder, UUID.randomUUID()));
+		assertEquals(0, storage.getUsedSlots(worldFolder));
+	}
+	
+	@Test
+	public void storesCompactInventoriesAsBytes() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final String inventory = InventorySaver.COMPACT_PREFIX + Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3, -128 });
+		save(uuid, inventory);
+		
+		assertEquals(inventory, storage.load(worldFolder, uuid).getInventory());
+	}
+	
+	@Test
+	public void storesCompressedInventoriesAsBytes() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final String inventory = InventorySaver.COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(new byte[] { 0, 1, 2, -128 });
+		save(uuid, inventory);
+		
+		assertEquals(inventory, storage.load(worldFolder, uuid).getInventory());
+	}
+	
+	@Test
+	public void reusesFreedSlots() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		
+		for (int i = 0; i < 10; i++) {
+			save(uuid, "inventory" + i);
+		}
+		
+		assertEquals("inventory9", storage.load(worldFolder, uuid).getInventory());
+		assertEquals(2, storage.getUsedSlots(worldFolder));
+	}
+	
+	@Test
+	public void mergesNeighbouringFreedSlots() throws IOException {
+		final UUID first = UUID.randomUUID();
+		final UUID second = UUID.randomUUID();
+		final UUID third = UUID.randomUUID();
+		final String largeInventory = createInventory(MappedInventoryStorage.SLOT_SIZE);
+		save(first, "first");
+		save(second, "second");
+		save(third, "third");
+		storage.save(worldFolder, Arrays.asList(new StoredInventory(first, "tester", largeInventory), new StoredInventory(second, "tester", largeInventory)));
+		save(third, largeInventory);
+		
+		assertEquals(largeInventory, storage.load(worldFolder, third).getInventory());
+		assertEquals(7, storage.getUsedSlots(worldFolder));
+	}
+	
+	@Test
+	public void cutsOffFreedSlotsAtTheEnd() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		save(uuid, "small");
+		save(uuid, createInventory(MappedInventoryStorage.SLOT_SIZE * 2));
+		save(uuid, "small again");
+		
+		assertEquals(1, storage.getUsedSlots(worldFolder));
+		
+		storage.close();
+		storage = new MappedInventoryStorage();
+		
+		assertEquals("small again", storage.load(worldFolder, uuid).getInventory());
+		assertEquals(1, storage.getUsedSlots(worldFolder));
+	}
+	
+	@Test
+	public void relocatesGrowingInventories() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final UUID otherUuid = UUID.randomUUID();
+		final String largeInventory = createInventory(MappedInventoryStorage.SLOT_SIZE * 3);
+		save(uuid, "small");
+		save(otherUuid, "other");
+		save(uuid, largeInventory);
+		
+		assertEquals(largeInventory, storage.load(worldFolder, uuid).getInventory());
+		assertEquals("other", storage.load(worldFolder, otherUuid).getInventory());
+	}
+	
+	@Test
+	public void growsPastInitialMapping() throws IOException {
+		final String inventory = createInventory(MappedInventoryStorage.SLOT_SIZE);
+		final UUID[] uuids = new UUID[100];
+		
+		for (int i = 0; i < uuids.length; i++) {
+			uuids[i] = UUID.randomUUID();
+			save(uuids[i], inventory + i);
+		}
+		
+		for (int i = 0; i < uuids.length; i++) {
+			assertEquals(inventory + i, storage.load(worldFolder, uuids[i]).getInventory());
+		}
+	}
+	
+	@Test
+	public void keepsLatestSavesAfterReopening() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		final UUID otherUuid = UUID.randomUUID();
+		save(uuid, "old");
+		save(otherUuid, "other");
+		save(uuid, createInventory(MappedInventoryStorage.SLOT_SIZE * 2));
+		save(uuid, "new");
+		storage.close();
+		storage = new MappedInventoryStorage();
+		
+		assertEquals("new", storage.load(worldFolder, uuid).getInventory());
+		assertEquals("other", storage.load(worldFolder, otherUuid).getInventory());
+	}
+}
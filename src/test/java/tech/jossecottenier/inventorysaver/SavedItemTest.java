@@ -1,9 +1,14 @@
 package tech.jossecottenier.inventorysaver;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Random;
 
+import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.Damageable;
 import org.bukkit.inventory.meta.ItemMeta;
@@ -37,6 +42,17 @@ public class SavedItemTest {
 		return fromSerializationEqualsItem(item, null);
 	}
 	
+	private ItemStack fromCompactSerialization(ItemStack item, InventorySaver inventorySaver) {
+		final CompactWriter writer = new CompactWriter();
+		new SavedItem(item).serialize(writer);
+		
+		return SavedItem.deserialize(new CompactReader(writer.toByteArray()), inventorySaver);
+	}
+	
+	private boolean fromCompactSerializationEqualsItem(ItemStack item) {
+		return item.equals(fromCompactSerialization(item, null));
+	}
+	
 	@Test
 	public void reconstructsStandardItem() {
 		final ItemStack item = new ItemStack(Randomizer.createRandomMaterial());
@@ -61,6 +77,32 @@ public class SavedItemTest {
 		assertTrue(fromSerializationEqualsItem(item));
 	}
 	
+	@Test
+	public void reconstructsItemWithLore() {
+		final ItemStack item = Randomizer.createRandomItemStack();
+		final ItemMeta meta = item.getItemMeta();
+		meta.setLore(Arrays.asList("First line, with a comma", "Second-line"));
+		item.setItemMeta(meta);
+		
+		assertTrue(new SavedItem(item).serialize().contains(",b="));
+		assertTrue(fromSerializationEqualsItem(item));
+	}
+	
+	@Test
+	public void savesSimpleItemsWithoutFullMeta() {
+		final ItemStack item = Randomizer.createRandomItemStack();
+		final ItemMeta meta = item.getItemMeta();
+		meta.setDisplayName(Randomizer.createRandomDisplayName());
+		item.setItemMeta(meta);
+		
+		assertFalse(new SavedItem(item).serialize().contains(",b="));
+	}
+	
+	@Test
+	public void fallsBackToSimplePropertiesForUnreadableFullMeta() {
+		assertEquals(new ItemStack(Material.STONE, 2), SavedItem.deserialize("m=STONE,a=2,n=null,d=0,b=AAAA,e="));
+	}
+	
 	@Test
 	public void reconstructsDamagedTool() {
 		final ItemStack tool = new ItemStack(Randomizer.createRandomTool());
@@ -118,4 +160,125 @@ public class SavedItemTest {
 		
 		assertTrue(fromSerializationEqualsItem(customItem, inventorySaver));
 	}
+	
+	@Test
+	public void unnamedCustomItemsDontReplacePlainItems() {
+		final InventorySaver inventorySaver = new InventorySaver();
+		final ItemStack stone = new ItemStack(Material.STONE, 5);
+		inventorySaver.addCustomItem("unnamed", new ItemStack(Material.STICK));
+		
+		assertTrue(fromSerializationEqualsItem(stone, inventorySaver));
+		assertEquals(stone, fromCompactSerialization(stone, inventorySaver));
+	}
+	
+	@Test
+	public void reconstructsToolWithSeparatorsInName() {
+		final ItemStack item = new ItemStack(Randomizer.createRandomTool());
+		final ItemMeta meta = item.getItemMeta();
+		meta.setDisplayName("Sword, the=sharp-one");
+		item.setItemMeta(meta);
+		
+		assertTrue(fromSerializationEqualsItem(item));
+	}
+	
+	@Test
+	public void readsItemStringWithoutName() {
+		final ItemStack item = SavedItem.deserialize("m=STONE,a=12,n=null,d=0,e=");
+		
+		assertEquals(new ItemStack(Material.STONE, 12), item);
+	}
+	
+	@Test
+	public void readsItemStringWithoutEnchantmentArgument() {
+		assertEquals(new ItemStack(Material.DIRT, 3), SavedItem.deserialize("m=DIRT,a=3,n=,d=0"));
+	}
+	
+	@Test
+	public void doesNotGiveMetaToPlainItems() {
+		assertFalse(SavedItem.deserialize("m=STONE,a=64,n=null,d=0,e=").hasItemMeta());
+		assertFalse(SavedItem.deserialize("m=DIRT,a=32,n=,d=0,e=").hasItemMeta());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownMaterial() {
+		SavedItem.deserialize("m=NOT_A_MATERIAL,a=1,n=null,d=0,e=");
+	}
+	
+	@Test
+	public void keepsEmptySlotsEmpty() {
+		assertNull(SavedItem.deserialize(""));
+	}
+	
+	@Test
+	public void reconstructsStandardItemStackFromCompactData() {
+		final ItemStack item = Randomizer.createRandomItemStack();
+		
+		assertTrue(fromCompactSerializationEqualsItem(item));
+	}
+	
+	@Test
+	public void reconstructsCompletelyRandomizedItemWithoutEnchantmentsFromCompactData() {
+		assertTrue(fromCompactSerializationEqualsItem(Randomizer.createRandomModifiedTool()));
+	}
+	
+	@Test
+	public void reconstructsItemWithLoreFromCompactData() {
+		final ItemStack item = Randomizer.createRandomItemStack();
+		final ItemMeta meta = item.getItemMeta();
+		meta.setLore(Arrays.asList("Lore"));
+		item.setItemMeta(meta);
+		
+		assertTrue(fromCompactSerializationEqualsItem(item));
+	}
+	
+	@Test
+	public void reconstructsCustomItemFromCompactData() {
+		final ItemStack customItem = Randomizer.createRandomCustomItem();
+		final InventorySaver inventorySaver = new InventorySaver();
+		inventorySaver.addCustomItem(customItem);
+		
+		assertEquals(customItem, fromCompactSerialization(customItem, inventorySaver));
+	}
+	
+	@Test
+	public void reconstructsRenamedCustomItemByKeyFromCompactData() {
+		final InventorySaver inventorySaver = new InventorySaver();
+		final ItemStack customItem = inventorySaver.addCustomItem("custom", Randomizer.createRandomCustomItem());
+		
+		final ItemStack renamedItem = customItem.clone();
+		final ItemMeta meta = renamedItem.getItemMeta();
+		meta.setDisplayName("Renamed");
+		renamedItem.setItemMeta(meta);
+		
+		assertEquals(customItem, fromCompactSerialization(renamedItem, inventorySaver));
+	}
+	
+	@Test
+	public void refersToEqualItemsInCompactData() {
+		final ItemStack item = Randomizer.createRandomItemStack();
+		final ItemMeta meta = item.getItemMeta();
+		meta.setLore(Arrays.asList("Lore"));
+		item.setItemMeta(meta);
+		
+		final CompactWriter writer = new CompactWriter();
+		SavedItem.serialize(item, writer);
+		final int firstSize = writer.size();
+		SavedItem.serialize(item.clone(), writer);
+		
+		// A reference is just a flags byte and an ID
+		assertEquals(firstSize + 2, writer.size());
+		
+		final CompactReader reader = new CompactReader(writer.toByteArray());
+		final ItemStack first = SavedItem.deserialize(reader, null);
+		final ItemStack second = SavedItem.deserialize(reader, null);
+		
+		assertEquals(item, first);
+		assertEquals(item, second);
+		assertFalse(first == second);
+	}
+	
+	@Test
+	public void keepsEmptySlotsEmptyInCompactData() {
+		assertNull(fromCompactSerialization(null, null));
+	}
 }
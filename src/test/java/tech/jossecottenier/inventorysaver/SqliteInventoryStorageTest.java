@@ -0,0 +1,78 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SqliteInventoryStorageTest {
+	private File dataFolder;
+	private File worldFolder;
+	private SqliteInventoryStorage storage;
+	
+	@Before
+	public void setUp() throws IOException {
+		dataFolder = Files.createTempDirectory("sqlite-test").toFile();
+		worldFolder = new File(dataFolder, "world");
+		storage = new SqliteInventoryStorage(dataFolder);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		storage.close();
+		
+		for (final File file : dataFolder.listFiles()) {
+			file.delete();
+		}
+		dataFolder.delete();
+	}
+	
+	@Test
+	public void loadsSavedInventories() throws IOException {
+		final UUID first = UUID.randomUUID();
+		final UUID second = UUID.randomUUID();
+		storage.save(worldFolder, Arrays.asList(new StoredInventory(first, "first", "firstInventory"), new StoredInventory(second, null, "secondInventory")));
+		
+		final StoredInventory firstInventory = storage.load(worldFolder, first);
+		assertEquals("first", firstInventory.getName());
+		assertEquals("firstInventory", firstInventory.getInventory());
+		assertNull(storage.load(worldFolder, second).getName());
+		assertEquals("secondInventory", storage.load(worldFolder, second).getInventory());
+	}
+	
+	@Test
+	public void replacesPreviousSaves() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		storage.save(worldFolder, Collections.singletonList(new StoredInventory(uuid, "tester", "old")));
+		storage.save(worldFolder, Collections.singletonList(new StoredInventory(uuid, "tester", "new")));
+		
+		assertEquals("new", storage.load(worldFolder, uuid).getInventory());
+	}
+	
+	@Test
+	public void keepsWorldsApart() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		storage.save(worldFolder, Collections.singletonList(new StoredInventory(uuid, "tester", "serialization")));
+		
+		assertNull(storage.load(new File(dataFolder, "other-world"), uuid));
+	}
+	
+	@Test
+	public void keepsSavesAfterReopening() throws IOException {
+		final UUID uuid = UUID.randomUUID();
+		storage.save(worldFolder, Collections.singletonList(new StoredInventory(uuid, "tester", "serialization")));
+		storage.close();
+		storage = new SqliteInventoryStorage(dataFolder);
+		
+		assertEquals("serialization", storage.load(worldFolder, uuid).getInventory());
+	}
+}
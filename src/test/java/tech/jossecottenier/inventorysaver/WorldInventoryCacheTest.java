@@ -0,0 +1,260 @@
+package tech.jossecottenier.inventorysaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+
+public class WorldInventoryCacheTest {
+	private Main plugin;
+	private WorldInventoryCache cache;
+	
+	private File worldFolder;
+	private UUID uuid;
+	private File playerFile;
+	
+	@Before
+	public void setUp() {
+		MockBukkit.mock();
+		plugin = (Main)MockBukkit.load(Main.class);
+		
+		cache = new WorldInventoryCache(2);
+		worldFolder = new File(plugin.getDataFolder() + File.separator + "cache-world");
+		uuid = UUID.randomUUID();
+		playerFile = WorldInventoryCache.getPlayerFile(worldFolder, uuid);
+	}
+	
+	@After
+	public void tearDown() {
+		MockBukkit.unmock();
+	}
+	
+	private File createWorldFolder(String name) {
+		return new File(plugin.getDataFolder() + File.separator + name);
+	}
+	
+	@Test
+	public void servesEntriesFromMemory() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		
+		assertEquals("serialization", cache.get(worldFolder, uuid));
+		assertFalse(playerFile.exists());
+	}
+	
+	@Test
+	public void appendsEntriesToJournalOnFlush() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush().join();
+		
+		assertTrue(new File(worldFolder, InventoryJournal.FILE_NAME).exists());
+		assertFalse(playerFile.exists());
+	}
+	
+	@Test
+	public void replaysJournalInNewCache() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush().join();
+		
+		assertEquals("serialization", new WorldInventoryCache(2).get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void appendsOnlyChangedSlots() {
+		final String unchangedItems = String.join("-", Collections.nCopies(40, "m=STONE,a=1,n=null,d=0"));
+		final File journalFile = new File(worldFolder, InventoryJournal.FILE_NAME);
+		cache.put(worldFolder, uuid, "tester", unchangedItems + "-");
+		cache.flush().join();
+		final long fullRecordSize = journalFile.length();
+		
+		cache.put(worldFolder, uuid, "tester", unchangedItems + "-m=DIRT,a=1,n=null,d=0");
+		cache.flush().join();
+		
+		assertTrue(journalFile.length() - fullRecordSize < fullRecordSize / 10);
+		assertEquals(unchangedItems + "-m=DIRT,a=1,n=null,d=0", new WorldInventoryCache(2).get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void writesEntriesOnCompaction() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush().join();
+		cache.compact().join();
+		
+		assertEquals("serialization", YamlConfiguration.loadConfiguration(playerFile).getString("inventory"));
+		assertFalse(new File(worldFolder, InventoryJournal.FILE_NAME).exists());
+	}
+	
+	@Test
+	public void refersToDictionaryItemsInPlayerFiles() {
+		final String inventory = "m=DIAMOND_SWORD,a=1,n=Excalibur,d=0,e=sharpness:5-m=STONE,a=1,n=null,d=0";
+		final YamlInventoryStorage storage = new YamlInventoryStorage();
+		storage.setItemDictionary(true);
+		cache.setStorage(storage);
+		cache.put(worldFolder, uuid, "tester", inventory);
+		cache.put(worldFolder, UUID.randomUUID(), "other", inventory);
+		cache.flush().join();
+		cache.compact().join();
+		
+		assertTrue(YamlConfiguration.loadConfiguration(playerFile).getString("inventory").startsWith("#"));
+		assertEquals(inventory, new WorldInventoryCache(2).get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void compactsJournalOnceTooLarge() {
+		cache.setStorage(new YamlInventoryStorage(0));
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush().join();
+		
+		assertTrue(playerFile.exists());
+	}
+	
+	@Test
+	public void recoversJournalsOfAllWorlds() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush().join();
+		
+		assertEquals(1, new WorldInventoryCache(2).recover(plugin.getDataFolder()));
+		assertEquals("serialization", YamlConfiguration.loadConfiguration(playerFile).getString("inventory"));
+	}
+	
+	@Test
+	public void concurrentPutsAreNeverLost() throws InterruptedException {
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		final UUID[] uuids = new UUID[8];
+		
+		for (int i = 0; i < uuids.length; i++) {
+			final UUID playerUuid = UUID.randomUUID();
+			uuids[i] = playerUuid;
+			
+			callers.execute(() -> {
+				for (int j = 0; j < 200; j++) {
+					cache.put(worldFolder, playerUuid, "tester", "serialization" + j);
+					
+					// Flushing halfway through the puts of other players
+					if (j % 50 == 0) {
+						cache.flush();
+					}
+				}
+			});
+		}
+		
+		callers.shutdown();
+		assertTrue(callers.awaitTermination(30, TimeUnit.SECONDS));
+		cache.flush().join();
+		
+		final WorldInventoryCache newCache = new WorldInventoryCache(2);
+		for (final UUID playerUuid : uuids) {
+			assertEquals("serialization199", newCache.get(worldFolder, playerUuid));
+		}
+	}
+	
+	@Test
+	public void putCompletesOnFlush() {
+		final CompletableFuture<Void> written = cache.put(worldFolder, uuid, "tester", "serialization");
+		assertFalse(written.isDone());
+		
+		cache.flush().join();
+		assertTrue(written.isDone());
+	}
+	
+	@Test
+	public void returnsNullForMissingEntries() {
+		assertNull(cache.get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void onlyWritesChangedPlayers() {
+		final UUID otherUuid = UUID.randomUUID();
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.get(worldFolder, otherUuid);
+		cache.flush().join();
+		cache.compact().join();
+		
+		assertTrue(playerFile.exists());
+		assertFalse(WorldInventoryCache.getPlayerFile(worldFolder, otherUuid).exists());
+	}
+	
+	@Test
+	public void evictsWorldsWithoutPlayers() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush(Collections.emptyMap()).join();
+		
+		assertFalse(cache.isCached(worldFolder));
+		assertEquals("serialization", cache.get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void keepsWorldsWithPlayers() {
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.flush(Collections.singletonMap("cache-world", Collections.singleton(uuid))).join();
+		
+		assertTrue(cache.isCached(worldFolder));
+		assertTrue(cache.isCached(worldFolder, uuid));
+	}
+	
+	@Test
+	public void evictsInventoriesOfPlayersWhoLeftWorld() {
+		final UUID otherUuid = UUID.randomUUID();
+		cache.put(worldFolder, uuid, "tester", "serialization");
+		cache.put(worldFolder, otherUuid, "other", "otherSerialization");
+		cache.flush(Collections.singletonMap("cache-world", Collections.singleton(otherUuid))).join();
+		
+		assertFalse(cache.isCached(worldFolder, uuid));
+		assertTrue(cache.isCached(worldFolder, otherUuid));
+		assertEquals("serialization", cache.get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void doesntCacheLoadsWhichPredateEviction() {
+		cache.put(worldFolder, uuid, "tester", "outdated");
+		cache.flush(Collections.emptyMap()).join();
+		cache.setStorage(new YamlInventoryStorage() {
+			private boolean saving = true;
+			
+			@Override
+			public StoredInventory load(File folder, UUID uuid) throws IOException {
+				final StoredInventory storedInventory = super.load(folder, uuid);
+				
+				if (saving) {
+					// A newer inventory gets saved and evicted while the outdated one is being read
+					saving = false;
+					cache.put(folder, uuid, "tester", "serialization");
+					cache.flush(Collections.emptyMap()).join();
+				}
+				
+				return storedInventory;
+			}
+		});
+		
+		assertEquals("serialization", cache.get(worldFolder, uuid));
+		assertEquals("serialization", cache.get(worldFolder, uuid));
+	}
+	
+	@Test
+	public void boundsAmountOfCachedWorlds() {
+		final File[] folders = new File[] { createWorldFolder("first"), createWorldFolder("second"), createWorldFolder("third") };
+		
+		for (final File folder : folders) {
+			cache.get(folder, uuid);
+		}
+		
+		assertFalse(cache.isCached(folders[0]));
+		assertTrue(cache.isCached(folders[1]));
+		assertTrue(cache.isCached(folders[2]));
+	}
+}